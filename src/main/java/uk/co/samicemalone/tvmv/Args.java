@@ -28,11 +28,15 @@
  */
 package uk.co.samicemalone.tvmv;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import uk.co.samicemalone.tvmv.io.CopyOperation;
 import uk.co.samicemalone.tvmv.io.IOOperation;
+import uk.co.samicemalone.tvmv.io.LinkOperation;
 import uk.co.samicemalone.tvmv.io.MoveOperation;
+import uk.co.samicemalone.tvmv.io.ReflinkOperation;
+import uk.co.samicemalone.tvmv.io.SymlinkOperation;
 
 /**
  *
@@ -44,6 +48,9 @@ public class Args {
     private boolean isHelp = false;
     private boolean isReplace = false;
     private boolean isSkipNotMatched = false;
+    private boolean isKeepGoing = false;
+    private boolean isServer = false;
+    private boolean isSubmit = false;
     private String showOverride;
     private String configFile;
     private IOOperation ioOperation = new MoveOperation();
@@ -81,6 +88,14 @@ public class Args {
         return isSkipNotMatched;
     }
 
+    /**
+     * Checks if the Keep going flag is set
+     * @return true if set, false otherwise
+     */
+    public boolean isKeepGoingSet() {
+        return isKeepGoing;
+    }
+
     /**
      * Get the path to configuration file
      * @return path to configuration file
@@ -114,6 +129,38 @@ public class Args {
         inputFiles.add(inputFile);
     }
     
+    /**
+     * Checks if the Server flag is set
+     * @return true if set, false otherwise
+     */
+    public boolean isServerSet() {
+        return isServer;
+    }
+
+    /**
+     * Checks if the Submit flag is set
+     * @return true if set, false otherwise
+     */
+    public boolean isSubmitSet() {
+        return isSubmit;
+    }
+
+    /**
+     * Resolve the relative input files against the given directory. Cygwin
+     * and WSL paths are left unchanged.
+     * @param dir directory to resolve against e.g. the client working directory
+     * @return same instance
+     */
+    public Args resolveInputFiles(Path dir) {
+        for(int i = 0; i < inputFiles.size(); i++) {
+            String file = inputFiles.get(i);
+            if(!OS.isCygwinPath(file) && !OS.isWSLPath(file)) {
+                inputFiles.set(i, dir.resolve(file).toString());
+            }
+        }
+        return this;
+    }
+    
     public boolean isHelpSet() {
         return isHelp;
     }
@@ -163,6 +210,20 @@ public class Args {
             case "--override-show":
                 returnArgs.showOverride = getArgument(args, index+1);
                 return true;
+            case "-k":
+            case "--keep-going":
+                returnArgs.isKeepGoing = true;
+                return false;
+            case "-l":
+            case "--link":
+                returnArgs.ioOperation = new LinkOperation();
+                return false;
+            case "--reflink":
+                returnArgs.ioOperation = new ReflinkOperation();
+                return false;
+            case "--symlink":
+                returnArgs.ioOperation = new SymlinkOperation();
+                return false;
             case "-n":
             case "--native":
                 returnArgs.isNativeIO = true;
@@ -175,6 +236,12 @@ public class Args {
             case "--skip-not-matched":
                 returnArgs.isSkipNotMatched = true;
                 return false;
+            case "--server":
+                returnArgs.isServer = true;
+                return false;
+            case "--submit":
+                returnArgs.isSubmit = true;
+                return false;
             default:
                 returnArgs.addInputFile(args[index]);
                 return false;
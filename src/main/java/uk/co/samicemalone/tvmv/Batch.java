@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.util.ArrayList;
+import java.util.List;
+import uk.co.samicemalone.libtv.exception.MatchException;
+import uk.co.samicemalone.tvmv.exception.FileStillExistsException;
+import uk.co.samicemalone.tvmv.exception.TransferStalledException;
+
+/**
+ * Batch records the outcome of each episode in a run. If the keep going flag
+ * is set, an episode that fails is recorded and the rest of the episodes are
+ * still processed. Transient errors are retried with a delay that doubles
+ * after each attempt. Otherwise, the first error ends the run.
+ * @author Sam Malone
+ */
+public class Batch {
+    
+    public static final int MAX_RETRIES = 3;
+    private static final long RETRY_DELAY = 10000;
+    
+    /**
+     * Get the delay before retrying an episode
+     * @param attempt number of attempts already retried
+     * @return retry delay in milliseconds
+     */
+    public static long getRetryDelay(int attempt) {
+        return RETRY_DELAY << attempt;
+    }
+    
+    /**
+     * Check if the error given may not occur if the episode is retried. Errors
+     * for a specific file, such as a file that already exists, does not exist
+     * or cannot be accessed, are not transient. The causes of the error are
+     * checked too, so a wrapped file error, e.g. from a native move, is not
+     * transient either. Other IO errors, such as a network error, are.
+     * @param e error
+     * @return true if transient, false otherwise
+     */
+    public static boolean isTransient(Exception e) {
+        if(e instanceof TransferStalledException) {
+            return ((TransferStalledException) e).isStopped();
+        }
+        if(!(e instanceof IOException)) {
+            return false;
+        }
+        for(Throwable t = e; t != null; t = t.getCause()) {
+            if(isFileError(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isFileError(Throwable t) {
+        return t instanceof NoSuchFileException || t instanceof AccessDeniedException ||
+               t instanceof FileAlreadyExistsException || t instanceof NotDirectoryException ||
+               t instanceof DirectoryNotEmptyException || t instanceof FileNotFoundException ||
+               t instanceof FileStillExistsException;
+    }
+    
+    private final boolean isKeepGoing;
+    private final List<Failure> failures;
+    private int completedCount;
+
+    public Batch(boolean isKeepGoing) {
+        this.isKeepGoing = isKeepGoing;
+        this.failures = new ArrayList<>();
+    }
+
+    public boolean isKeepGoing() {
+        return isKeepGoing;
+    }
+    
+    public synchronized void onCompleted() {
+        completedCount++;
+    }
+    
+    public synchronized void onFailed(String input, Exception error) {
+        failures.add(new Failure(input, error));
+    }
+
+    /**
+     * Get the handler that records each file that cannot be matched as failed
+     * @return failure handler or null if the batch doesn't keep going
+     */
+    public EpisodeMatcher.FailureHandler getMatchFailureHandler() {
+        if(!isKeepGoing) {
+            return null;
+        }
+        return new EpisodeMatcher.FailureHandler() {
+            @Override
+            public void onFailed(String input, MatchException e) {
+                Batch.this.onFailed(input, e);
+            }
+        };
+    }
+
+    public synchronized List<Failure> getFailures() {
+        return new ArrayList<>(failures);
+    }
+    
+    /**
+     * Display the outcome of the batch if the keep going flag is set
+     * @throws IOException if any of the episodes failed
+     */
+    public synchronized void finish() throws IOException {
+        if(!isKeepGoing) {
+            return;
+        }
+        Display.onBatchComplete(completedCount, failures);
+        if(!failures.isEmpty()) {
+            throw new IOException(String.format("%d of %d episodes could not be transferred", failures.size(), failures.size() + completedCount));
+        }
+    }
+    
+    /**
+     * Failure of an input file or episode and the error that caused it
+     */
+    public static class Failure {
+        
+        private final String input;
+        private final Exception error;
+
+        public Failure(String input, Exception error) {
+            this.input = input;
+            this.error = error;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.PrintStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+import org.fusesource.jansi.AnsiConsole;
+
+/**
+ * ConsoleWriter writes output on a single background thread so that callers
+ * never block on a slow terminal and output from different threads is never
+ * interleaved. Output is queued without locking. A progress frame is dropped
+ * if it is immediately followed by another progress frame, so only the latest
+ * progress is drawn.
+ * <p>If quiet, the output is written to System.out without ANSI rendering
+ * and progress frames are dropped. This is used when stdout is not a
+ * terminal, e.g. when redirected to a log file.
+ * @author Sam Malone
+ */
+public class ConsoleWriter {
+    
+    private static class Entry {
+        
+        private final String text;
+        private final boolean isProgress;
+        private final CountDownLatch flushed;
+
+        public Entry(String text, boolean isProgress, CountDownLatch flushed) {
+            this.text = text;
+            this.isProgress = isProgress;
+            this.flushed = flushed;
+        }
+        
+    }
+    
+    private final boolean isQuiet;
+    private final PrintStream out;
+    private final Queue<Entry> queue;
+    private Thread writer;
+
+    /**
+     * Create a new ConsoleWriter that writes to the console
+     * @param isQuiet true to write plain output without progress frames
+     */
+    public ConsoleWriter(boolean isQuiet) {
+        this(isQuiet, null);
+    }
+
+    /**
+     * Create a new ConsoleWriter
+     * @param isQuiet true to write plain output without progress frames
+     * @param out stream to write to or null to write to the console
+     */
+    public ConsoleWriter(boolean isQuiet, PrintStream out) {
+        this.isQuiet = isQuiet;
+        this.out = out;
+        this.queue = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Check if this writer is quiet. Callers should not render ANSI output
+     * when quiet.
+     * @return true if quiet, false otherwise
+     */
+    public boolean isQuiet() {
+        return isQuiet;
+    }
+    
+    /**
+     * Queue the text to be written
+     * @param text text to write
+     */
+    public void print(String text) {
+        offer(new Entry(text, false, null));
+    }
+    
+    /**
+     * Queue the progress frame to be written. The frame is dropped if quiet,
+     * or if another progress frame is queued before it is written.
+     * @param frame progress frame to write
+     */
+    public void printProgress(String frame) {
+        if(!isQuiet) {
+            offer(new Entry(frame, true, null));
+        }
+    }
+    
+    /**
+     * Wait until all of the queued output has been written
+     */
+    public void flush() {
+        if(getWriter() == null) {
+            return;
+        }
+        CountDownLatch flushed = new CountDownLatch(1);
+        offer(new Entry(null, false, flushed));
+        boolean interrupted = false;
+        while(true) {
+            try {
+                flushed.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void offer(Entry entry) {
+        queue.offer(entry);
+        LockSupport.unpark(startWriter());
+    }
+    
+    private synchronized Thread getWriter() {
+        return writer;
+    }
+    
+    private synchronized Thread startWriter() {
+        if(writer == null) {
+            writer = new DaemonThreadFactory("tvmv-console").newThread(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            });
+            writer.start();
+        }
+        return writer;
+    }
+    
+    private void write() {
+        PrintStream out = this.out != null ? this.out : isQuiet ? System.out : AnsiOutput.get();
+        while(true) {
+            Entry e = queue.poll();
+            if(e == null) {
+                out.flush();
+                LockSupport.park(this);
+                continue;
+            }
+            if(e.flushed != null) {
+                out.flush();
+                e.flushed.countDown();
+            } else if(!e.isProgress || !isProgressNext()) {
+                out.print(e.text);
+            }
+        }
+    }
+    
+    private boolean isProgressNext() {
+        Entry next = queue.peek();
+        return next != null && next.isProgress;
+    }
+    
+    /**
+     * Holder for the ANSI console so that Jansi is only loaded if output is
+     * written to a terminal
+     */
+    private static class AnsiOutput {
+        
+        public static PrintStream get() {
+            return AnsiConsole.out();
+        }
+        
+    }
+    
+}
@@ -30,6 +30,8 @@ package uk.co.samicemalone.tvmv;
 
 import java.math.BigDecimal;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.StringUtils;
 import org.fusesource.jansi.Ansi;
 import org.fusesource.jansi.AnsiConsole;
@@ -45,32 +47,83 @@ public class Display {
     public static final int WIDTH = 80;
     public static final int PROGRESS_WIDTH = 73; // WIDTH - "[] ###%" length
     
+    private static final String NEWLINE = System.lineSeparator();
+    private static final ConsoleWriter DEFAULT_CONSOLE = new ConsoleWriter(System.console() == null);
+    private static volatile ConsoleWriter CONSOLE = DEFAULT_CONSOLE;
+    
+    /**
+     * Set the console that output is written to. The output already written
+     * to the current console is flushed first.
+     * @param console console or null to write to the default console
+     */
+    public static void setConsole(ConsoleWriter console) {
+        CONSOLE.flush();
+        CONSOLE = console == null ? DEFAULT_CONSOLE : console;
+    }
+    
+    private static void print(String text) {
+        CONSOLE.print(text);
+    }
+    
+    private static void println(String text) {
+        CONSOLE.print(text + NEWLINE);
+    }
+    
+    private static String render(String markup) {
+        if(CONSOLE.isQuiet()) {
+            return markup.replaceAll("@\\|[\\w,]+ |\\|@", "");
+        }
+        return Ansi.ansi().render(markup).toString();
+    }
+    
+    private static boolean isNativeDisplay(boolean isNativeIO) {
+        return isNativeIO || CONSOLE.isQuiet();
+    }
+    
+    /**
+     * Wait until all of the output has been written to the console
+     */
+    public static void flush() {
+        CONSOLE.flush();
+    }
+    
     private static String getIODescription(IOOperation.Type type) {
-        return type == IOOperation.Type.COPY ? "Copying" : "Moving";
+        switch(type) {
+            case COPY:
+                return "Copying";
+            case LINK:
+                return "Linking";
+            case REFLINK:
+                return "Cloning";
+            case SYMLINK:
+                return "Symlinking";
+            default:
+                return "Moving";
+        }
     }
     
     public static void onPreRemoveOld(int replacementCount) {
         if(replacementCount > 0) {
-            System.out.println("Replacing");
+            println("Replacing");
         }
     }
     
     public static void onPreIORemoveOld(String fileName) {
-        System.out.format("  %s\n", fileName);
+        print(String.format("  %s\n", fileName));
     }
     
     public static void onPreReplace(IOOperation.Type type, int replacementCount) {
         if(replacementCount > 0) {
-            System.out.format("with\n");
+            print("with\n");
         } else {
-            System.out.println(getIODescription(type));
+            println(getIODescription(type));
         }
     }
     
     public static void onPreIOReplace(IOOperation iop, boolean isNativeIO) {
-        System.out.format("  %s...", iop.getSource().getFileName());
-        if(!isNativeIO) {
-            System.out.println();
+        print(String.format("  %s...", iop.getSource().getFileName()));
+        if(!isNativeDisplay(isNativeIO)) {
+            println("");
         }
     }
     
@@ -79,21 +132,32 @@ public class Display {
     }
     
     public static void onPreIO(IOOperation iop, boolean isNativeIO) {
-        System.out.format("%s %s...", getIODescription(iop.getType()), iop.getSource().getFileName());
-        if(!isNativeIO) {
-            System.out.println();
+        print(String.format("%s %s...", getIODescription(iop.getType()), iop.getSource().getFileName()));
+        if(!isNativeDisplay(isNativeIO)) {
+            println("");
         }
     }
     
     public static void onPostIO(boolean isNativeIO) {
-        System.out.println(isNativeIO ? "done" : "");
+        println(isNativeDisplay(isNativeIO) ? "done" : "");
     }
     
     public static void onSkipNotMatched(Path skippedPath) {
-        System.out.println("Skipping: " + skippedPath);
+        println("Skipping: " + skippedPath);
+    }
+    
+    public static void onSkipDuplicate(Path source, Path destination) {
+        println("Skipping duplicate: " + source.getFileName() + " already exists as " + destination);
+    }
+    
+    public static void onSkipConflict(Path source, Path destination) {
+        println("Skipping: " + source.getFileName() + " conflicts with " + destination);
     }
     
     public static void onIOProgress(IOProgress p) {
+        if(CONSOLE.isQuiet()) {
+            return;
+        }
         String percent = p.hasCompleted() ? "100" : String.valueOf(p.getPercent());
         int chars = p.hasCompleted() ? PROGRESS_WIDTH : p.getRatio().multiply(new BigDecimal(PROGRESS_WIDTH)).intValue();
         int spaces = PROGRESS_WIDTH - chars;
@@ -105,14 +169,96 @@ public class Display {
         if(OS.isWindows && !System.getProperty("java.io.tmpdir").toLowerCase().contains("cygwin")) {
             ansi.saveCursorPosition().eraseLine().render(format.toString()).restoreCursorPosition();
         } else {
-            System.out.print('\r');
-            ansi.render(format.toString());
+            ansi.a('\r').render(format.toString());
+        }
+        CONSOLE.printProgress(ansi.toString());
+    }
+
+    public static void onIOStalled(boolean isNativeIO) {
+        println(isNativeDisplay(isNativeIO) ? "stalled" : "");
+    }
+    
+    public static void onIOFailed(boolean isNativeIO) {
+        if(isNativeDisplay(isNativeIO)) {
+            println("failed");
+        }
+    }
+    
+    public static void onBatchComplete(int completedCount, List<Batch.Failure> failures) {
+        println(String.format("Completed %d episodes, %d failed", completedCount, failures.size()));
+        for(Batch.Failure f : failures) {
+            Throwable cause = f.getError().getCause();
+            String message = f.getError().getMessage() + (cause == null ? "" : " (" + cause.getMessage() + ")");
+            println(render("  @|red Failed|@: " + f.getInput() + ": " + message));
+        }
+    }
+    
+    public static void onTransferRetry(String message, long retryDelay) {
+        println(render("@|yellow Notice|@: " + message + ". Retrying in " + TimeUnit.MILLISECONDS.toSeconds(retryDelay) + " seconds"));
+    }
+
+    public static void onShowsCreated(int createdCount, int existingCount, List<Path> failedPaths) {
+        if(createdCount == 0 && failedPaths.isEmpty()) {
+            return;
+        }
+        println(String.format("Created %d show directories (%d already existed)", createdCount, existingCount));
+        for(Path p : failedPaths) {
+            println(render("@|red Failed|@: Unable to create " + p));
+        }
+    }
+    
+    public static void onServerStarted(int port) {
+        println("Listening for submissions on port " + port);
+    }
+    
+    public static void onSubmitRejected() {
+        println(render("@|yellow Notice|@: The tvmv server rejected the submission. Importing without the server"));
+    }
+    
+    public static void onConfigReloaded() {
+        println("Reloaded the config and aliases");
+    }
+    
+    public static void onConfigReloadFailed(String message) {
+        println(render("@|yellow Notice|@: Keeping the previous config. Unable to reload: " + message));
+    }
+    
+    /**
+     * Print the error message and the message of its cause (if not null) to
+     * stderr, after the output has been flushed
+     * @param message error message
+     * @param causeMessage message of the cause of the error or null
+     */
+    public static void onError(String message, String causeMessage) {
+        flush();
+        AnsiConsole.err().println(Ansi.ansi().render(message));
+        if(causeMessage != null) {
+            AnsiConsole.err().print(Ansi.ansi().render(" @|yellow Cause|@: "));
+            System.err.println(causeMessage);
+        }
+    }
+
+    public static void onShowIndexFailed(String root, boolean isPreviousKept) {
+        String kept = isPreviousKept ? ". Using the show directories previously listed" : "";
+        println(render("@|yellow Notice|@: Unable to list the show directories of " + root + kept));
+    }
+
+    public static void onDegradedDestination(Path destination) {
+        println(render("@|yellow Notice|@: Skipping unreachable destination " + destination));
+    }
+
+    public static void onReclaimFailures(List<Path> failedPaths) {
+        if(failedPaths.isEmpty()) {
+            return;
+        }
+        println(render("@|yellow Notice|@: Unable to delete the following replaced episodes. They will be retried next time:"));
+        for(Path p : failedPaths) {
+            print(String.format("  %s\n", p));
         }
-        AnsiConsole.out().print(ansi);
     }
 
     public static void onIORollback(IOOperation io) {
-        System.out.println("Rolling Back: " + io.getDestination().getFileName());
+        println("Rolling Back: " + io.getDestination().getFileName());
     }
     
 }
@@ -41,6 +41,7 @@ import uk.co.samicemalone.libtv.exception.MatchException;
 import uk.co.samicemalone.libtv.matcher.TVMatcher;
 import uk.co.samicemalone.libtv.model.EpisodeMatch;
 import uk.co.samicemalone.libtv.matcher.TVMatcher.MatchElement;
+import uk.co.samicemalone.tvmv.io.MatchCache;
 
 /**
  *
@@ -48,8 +49,38 @@ import uk.co.samicemalone.libtv.matcher.TVMatcher.MatchElement;
  */
 public class EpisodeMatcher {
     
+    /**
+     * Handler called for each episode matched
+     */
+    public interface MatchHandler {
+        
+        /**
+         * Called when an input file has been matched
+         * @param match matched episode
+         * @throws InterruptedException if interrupted while handling the match
+         */
+        void onMatch(EpisodeMatch match) throws InterruptedException;
+        
+    }
+    
+    /**
+     * Handler called for each file that could not be matched
+     */
+    public interface FailureHandler {
+        
+        /**
+         * Called when a file could not be matched
+         * @param input path of the file
+         * @param e reason the file could not be matched
+         * @throws InterruptedException if interrupted while handling the failure
+         */
+        void onFailed(String input, MatchException e) throws InterruptedException;
+        
+    }
+    
     private final boolean isSkipNotMatched;
     private final String tvShow;
+    private final MatchCache matchCache;
     
     /**
      * Create a new instance of episode matcher
@@ -58,8 +89,21 @@ public class EpisodeMatcher {
      * skipped. if false, an exception will be thrown when unable to match 
      */
     public EpisodeMatcher(String tvShow, boolean isSkipNotMatched) {
+        this(tvShow, isSkipNotMatched, null);
+    }
+    
+    /**
+     * Create a new instance of episode matcher
+     * @param tvShow TV show
+     * @param isSkipNotMatched if true, files that cannot be matched will be
+     * skipped. if false, an exception will be thrown when unable to match 
+     * @param matchCache cache of files previously rejected, used to skip files
+     * without matching them again when isSkipNotMatched is true. May be null
+     */
+    public EpisodeMatcher(String tvShow, boolean isSkipNotMatched, MatchCache matchCache) {
         this.tvShow = tvShow;
         this.isSkipNotMatched = isSkipNotMatched;
+        this.matchCache = matchCache;
     }
     
     /**
@@ -68,8 +112,7 @@ public class EpisodeMatcher {
      * skipped. if false, an exception will be thrown when unable to match 
      */
     public EpisodeMatcher(boolean isSkipNotMatched) {
-        this.tvShow = null;
-        this.isSkipNotMatched = isSkipNotMatched;
+        this(null, isSkipNotMatched, null);
     }
     
     /**
@@ -77,8 +120,7 @@ public class EpisodeMatcher {
      * @param tvShow TV show
      */
     public EpisodeMatcher(String tvShow) {
-        this.tvShow = tvShow;
-        this.isSkipNotMatched = false;
+        this(tvShow, false, null);
     }
     
     /**
@@ -89,27 +131,94 @@ public class EpisodeMatcher {
      * be found for an input file and this episode matcher doesn't skip unmatched episodes
      */
     public List<EpisodeMatch> matchEpisodes(List<String> inputFiles) throws MatchException {
+        return matchEpisodes(inputFiles, (FailureHandler) null);
+    }
+    
+    /**
+     * Matches the list of input episode paths or directory paths. If a
+     * failure handler is given, each file that cannot be matched is passed to
+     * it and the rest of the files are still matched.
+     * @param inputFiles list of episode files or directories (can be mixed)
+     * @param failureHandler handler to pass each file that cannot be matched
+     * to, or null to throw the first MatchException
+     * @return List of matched episodes
+     * @throws uk.co.samicemalone.libtv.exception.MatchException if a match could not
+     * be found for an input file, this episode matcher doesn't skip unmatched
+     * episodes and no failure handler is given
+     */
+    public List<EpisodeMatch> matchEpisodes(List<String> inputFiles, FailureHandler failureHandler) throws MatchException {
+        final List<EpisodeMatch> episodeList = new ArrayList<>(inputFiles.size());
+        try {
+            matchEpisodes(inputFiles, new MatchHandler() {
+                @Override
+                public void onMatch(EpisodeMatch match) {
+                    episodeList.add(match);
+                }
+            }, failureHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return episodeList;
+    }
+    
+    /**
+     * Matches the list of input episode paths or directory paths, passing
+     * each episode to the handler given as soon as it has been matched
+     * @param inputFiles list of episode files or directories (can be mixed)
+     * @param handler handler to pass each matched episode to
+     * @throws uk.co.samicemalone.libtv.exception.MatchException if a match could not
+     * be found for an input file and this episode matcher doesn't skip unmatched episodes
+     * @throws InterruptedException if the handler was interrupted
+     */
+    public void matchEpisodes(List<String> inputFiles, MatchHandler handler) throws MatchException, InterruptedException {
+        matchEpisodes(inputFiles, handler, null);
+    }
+    
+    /**
+     * Matches the list of input episode paths or directory paths, passing
+     * each episode to the handler given as soon as it has been matched. If a
+     * failure handler is given, each file that cannot be matched, including
+     * a file in an input directory, is passed to it and the rest of the files
+     * are still matched.
+     * @param inputFiles list of episode files or directories (can be mixed)
+     * @param handler handler to pass each matched episode to
+     * @param failureHandler handler to pass each file that cannot be matched
+     * to, or null to throw the first MatchException
+     * @throws uk.co.samicemalone.libtv.exception.MatchException if a match could not
+     * be found for an input file, this episode matcher doesn't skip unmatched
+     * episodes and no failure handler is given
+     * @throws InterruptedException if a handler was interrupted
+     */
+    public void matchEpisodes(List<String> inputFiles, MatchHandler handler, FailureHandler failureHandler) throws MatchException, InterruptedException {
         TVMatcher tvMatcher = new TVMatcher();
-        List<EpisodeMatch> episodeList = new ArrayList<>(inputFiles.size());
-        for(String inputFile : inputFiles) {
-            Path p = Paths.get(inputFile);
-            if(Files.isDirectory(p)) {
-                matchEpisodesInDir(tvMatcher, episodeList, p);
-            } else {
-                EpisodeMatch m = matchEpisode(tvMatcher, p);
-                if(m != null) {
-                    episodeList.add(m);
+        try {
+            for(String inputFile : inputFiles) {
+                Path p = Paths.get(inputFile);
+                if(Files.isDirectory(p)) {
+                    matchEpisodesInDir(tvMatcher, handler, failureHandler, p);
+                } else {
+                    matchEpisode(tvMatcher, handler, failureHandler, p);
                 }
             }
+        } finally {
+            if(matchCache != null) {
+                matchCache.save();
+            }
         }
-        return episodeList;
     }
     
     private EpisodeMatch matchEpisode(TVMatcher tvMatcher, Path path) throws MatchException {
         MatchElement me = tvShow == null ? MatchElement.ALL : MatchElement.SEASON;
         if(isSkipNotMatched) {
+            if(matchCache != null && matchCache.isRejected(path, me.name())) {
+                Display.onSkipNotMatched(path);
+                return null;
+            }
             EpisodeMatch e = tvMatcher.matchElement(path, me);
             if(e == null) {
+                if(matchCache != null) {
+                    matchCache.addRejected(path, me.name());
+                }
                 Display.onSkipNotMatched(path);
             } else if(tvShow != null) {
                 e.setShow(tvShow);
@@ -124,13 +233,26 @@ public class EpisodeMatcher {
         }
     }
     
-    private void matchEpisodesInDir(TVMatcher tvMatcher, List<EpisodeMatch> matches, Path dirPath) throws MatchException {
+    private void matchEpisode(TVMatcher tvMatcher, MatchHandler handler, FailureHandler failureHandler, Path path) throws MatchException, InterruptedException {
+        EpisodeMatch m;
+        try {
+            m = matchEpisode(tvMatcher, path);
+        } catch (MatchException e) {
+            if(failureHandler == null) {
+                throw e;
+            }
+            failureHandler.onFailed(path.toString(), e);
+            return;
+        }
+        if(m != null) {
+            handler.onMatch(m);
+        }
+    }
+    
+    private void matchEpisodesInDir(TVMatcher tvMatcher, MatchHandler handler, FailureHandler failureHandler, Path dirPath) throws MatchException, InterruptedException {
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(dirPath, new VideoFilter())) {
             for(Path path : stream) {
-                EpisodeMatch e = matchEpisode(tvMatcher, path);
-                if(e != null) {
-                    matches.add(e);
-                }
+                matchEpisode(tvMatcher, handler, failureHandler, path);
             }
         } catch (IOException | DirectoryIteratorException e) {
             
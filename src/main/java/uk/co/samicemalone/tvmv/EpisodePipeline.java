@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import uk.co.samicemalone.libtv.exception.MatchException;
+import uk.co.samicemalone.libtv.model.EpisodeMatch;
+import uk.co.samicemalone.tvmv.io.ConflictResolver.Resolution;
+import uk.co.samicemalone.tvmv.io.EpisodeIO;
+import uk.co.samicemalone.tvmv.io.EpisodesPathResolver;
+import uk.co.samicemalone.tvmv.io.IOOperation;
+import uk.co.samicemalone.tvmv.model.Source;
+
+/**
+ * EpisodePipeline matches, prepares and transfers episodes as a pipeline of
+ * three stages connected by bounded queues:
+ * <ul>
+ * <li>the input files of each source are matched by the {@link EpisodeMatcher}
+ * concurrently with the other sources</li>
+ * <li>the destination directory of each match is created and the destination
+ * path is checked for conflicts, unless the episode has already been filed.
+ * Up to {@link Source#getConcurrency()} episodes of each source are prepared
+ * at once, but they are passed on in the order they were matched.</li>
+ * <li>each episode is transferred by {@link EpisodeIO} on the calling thread.
+ * Of the episodes that have been prepared, the episode with the highest
+ * source priority is transferred first.</li>
+ * </ul>
+ * The first episode is transferred as soon as it has been prepared, rather
+ * than after every input file has been matched. The episodes of a source are
+ * transferred in the order they were matched, however many are prepared at
+ * once, so if a stage fails, the episodes of the source ahead of the failure
+ * are still transferred before the error is thrown. The episodes of different
+ * sources with the same priority are transferred in the order they were
+ * prepared.
+ * <p>Failed transfers are retried by a {@link RetryQueue}, so a stuck file
+ * doesn't hold up the rest of the episodes.
+ * @author Sam Malone
+ */
+public class EpisodePipeline {
+    
+    private static final int QUEUE_SIZE = 16;
+    
+    private final EpisodeMatcher matcher;
+    private final EpisodesPathResolver pathResolver;
+    private final EpisodeIO episodeIO;
+    private Batch batch;
+
+    public EpisodePipeline(EpisodeMatcher matcher, EpisodesPathResolver pathResolver, EpisodeIO episodeIO) {
+        this.matcher = matcher;
+        this.pathResolver = pathResolver;
+        this.episodeIO = episodeIO;
+        this.batch = new Batch(false);
+    }
+    
+    /**
+     * Set the Batch used to record the outcome of each episode
+     * @param batch Batch
+     */
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+    
+    /**
+     * Match each of the input files and transfer the episodes to their
+     * destination directories
+     * @param inputFiles list of episode files or directories (can be mixed)
+     * @param iop IOOperation used to determine operation type e.g. copy or move
+     * @throws MatchException if an input file could not be matched and the
+     * matcher doesn't skip unmatched episodes
+     * @throws IOException if unable to create a destination directory, if a
+     * destination file already exists or if an IO error occurs
+     */
+    public void run(List<String> inputFiles, IOOperation iop) throws MatchException, IOException {
+        run(Collections.singletonMap(Source.INPUT_FILES, inputFiles), iop);
+    }
+    
+    /**
+     * Match the input files of each source and transfer the episodes to their
+     * destination directories, preferring the sources with a higher priority
+     * @param sourceFiles map of source to episode files or directories
+     * @param iop IOOperation used to determine operation type e.g. copy or move
+     * @throws MatchException if an input file could not be matched and the
+     * matcher doesn't skip unmatched episodes
+     * @throws IOException if unable to create a destination directory, if a
+     * destination file already exists or if an IO error occurs
+     */
+    public void run(Map<Source, List<String>> sourceFiles, IOOperation iop) throws MatchException, IOException {
+        BlockingQueue<Item> prepared = new PriorityBlockingQueue<>();
+        Semaphore preparedSlots = new Semaphore(QUEUE_SIZE);
+        int threads = 0;
+        for(Source source : sourceFiles.keySet()) {
+            threads += 1 + source.getConcurrency();
+        }
+        ExecutorService es = Executors.newFixedThreadPool(Math.max(1, threads), new DaemonThreadFactory("tvmv-pipeline"));
+        try {
+            int workers = 0;
+            for(Source source : sourceFiles.keySet()) {
+                workers += source.getConcurrency();
+            }
+            AtomicInteger activeWorkers = new AtomicInteger(workers);
+            AtomicLong sequence = new AtomicLong();
+            if(workers == 0) {
+                prepared.put(Item.END);
+            }
+            for(Map.Entry<Source, List<String>> entry : sourceFiles.entrySet()) {
+                Source source = entry.getKey();
+                BlockingQueue<Item> matched = new ArrayBlockingQueue<>(QUEUE_SIZE);
+                MatchOrder order = new MatchOrder();
+                es.execute(new MatchStage(entry.getValue(), matched));
+                for(int i = 0; i < source.getConcurrency(); i++) {
+                    es.execute(new PrepareStage(source, matched, prepared, preparedSlots, order, activeWorkers, sequence));
+                }
+            }
+            RetryQueue retries = new RetryQueue(batch);
+            Item item;
+            while((item = takeOrRetry(prepared, retries)) != Item.END) {
+                preparedSlots.release();
+                if(item.isRecoverableError() && batch.isKeepGoing()) {
+                    batch.onFailed(item.input, (Exception) item.error);
+                    continue;
+                }
+                item.throwIfError();
+                retries.transfer(newTransfer(iop, item));
+                retries.retryDue();
+            }
+            retries.retryAll();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+    
+    private RetryQueue.Task newTransfer(final IOOperation iop, final Item item) {
+        return new RetryQueue.Task(item.input) {
+            @Override
+            public void transfer() throws IOException {
+                episodeIO.transfer(iop, item.match, item.destination, item.resolution);
+            }
+        };
+    }
+    
+    /**
+     * Take the next prepared item. While waiting for it, the failed transfers
+     * are retried as they become due.
+     */
+    private Item takeOrRetry(BlockingQueue<Item> prepared, RetryQueue retries) throws IOException, InterruptedException {
+        long delay;
+        while((delay = retries.getNextDelay()) >= 0) {
+            Item item = prepared.poll(delay, TimeUnit.MILLISECONDS);
+            if(item != null) {
+                return item;
+            }
+            retries.retryDue();
+        }
+        return prepared.take();
+    }
+    
+    private static void putQuietly(BlockingQueue<Item> queue, Item item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            
+        }
+    }
+    
+    private class MatchStage implements Runnable {
+        
+        private final List<String> inputFiles;
+        private final BlockingQueue<Item> out;
+        private long matchCount;
+
+        public MatchStage(List<String> inputFiles, BlockingQueue<Item> out) {
+            this.inputFiles = inputFiles;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            EpisodeMatcher.MatchHandler handler = new EpisodeMatcher.MatchHandler() {
+                @Override
+                public void onMatch(EpisodeMatch match) throws InterruptedException {
+                    out.put(new Item(match, null, null).matched(matchCount++));
+                }
+            };
+            try {
+                matcher.matchEpisodes(inputFiles, handler, batch.getMatchFailureHandler());
+                out.put(Item.END);
+            } catch (MatchException | RuntimeException | Error e) {
+                putQuietly(out, new Item(e, null).matched(matchCount++));
+            } catch (InterruptedException e) {
+                
+            }
+        }
+        
+    }
+    
+    /**
+     * MatchOrder passes the items prepared by the workers of a source on in
+     * the order they were matched. A worker that finishes preparing an item
+     * early waits for the items matched before it to be passed on first.
+     */
+    private static class MatchOrder {
+        
+        private long next;
+        
+        public synchronized void awaitTurn(long index) throws InterruptedException {
+            while(index != next) {
+                wait();
+            }
+        }
+        
+        public synchronized void endTurn() {
+            next++;
+            notifyAll();
+        }
+        
+    }
+    
+    /**
+     * PrepareStage prepares the matched episodes of a source. Several workers
+     * can share the same input queue, so the end of the input (or an error) is
+     * put back for the other workers. The last worker to finish ends the
+     * output queue.
+     */
+    private class PrepareStage implements Runnable {
+        
+        private final Source source;
+        private final BlockingQueue<Item> in;
+        private final BlockingQueue<Item> out;
+        private final Semaphore outSlots;
+        private final MatchOrder order;
+        private final AtomicInteger activeWorkers;
+        private final AtomicLong sequence;
+
+        public PrepareStage(Source source, BlockingQueue<Item> in, BlockingQueue<Item> out, Semaphore outSlots, MatchOrder order, AtomicInteger activeWorkers, AtomicLong sequence) {
+            this.source = source;
+            this.in = in;
+            this.out = out;
+            this.outSlots = outSlots;
+            this.order = order;
+            this.activeWorkers = activeWorkers;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Item item;
+                while((item = in.take()) != Item.END) {
+                    Item result = item.error != null ? item : prepare(item.match);
+                    order.awaitTurn(item.index);
+                    try {
+                        outSlots.acquire();
+                        out.put(result.schedule(source, sequence.getAndIncrement()));
+                    } finally {
+                        order.endTurn();
+                    }
+                    if(item.error != null && !(batch.isKeepGoing() && item.isRecoverableError())) {
+                        break;
+                    }
+                }
+                in.put(Item.END);
+            } catch (InterruptedException e) {
+                
+            } finally {
+                if(activeWorkers.decrementAndGet() == 0) {
+                    out.add(Item.END);
+                }
+            }
+        }
+        
+        private Item prepare(EpisodeMatch match) {
+            try {
+                Path filedPath = episodeIO.findFiled(match);
+                if(filedPath != null) {
+                    return new Item(match, filedPath, Resolution.DUPLICATE);
+                }
+                Path destDir = pathResolver.newEpisodesPath(match.getShow(), match.getSeason());
+                Path destPath = episodeIO.getDestinationPath(match, destDir);
+                return new Item(match, destPath, episodeIO.checkDestination(match, destPath));
+            } catch (IOException | RuntimeException | Error e) {
+                return new Item(e, match.getEpisodeFile().getPath());
+            }
+        }
+        
+    }
+    
+    private static class Item implements Comparable<Item> {
+        
+        private static final Item END = new Item(null, null, null).schedule(null, Long.MAX_VALUE);
+        
+        private final EpisodeMatch match;
+        private final Path destination;
+        private final Resolution resolution;
+        private final Throwable error;
+        private final String input;
+        private int priority = Integer.MIN_VALUE;
+        private long sequence;
+        private long index;
+
+        public Item(EpisodeMatch match, Path destination, Resolution resolution) {
+            this.match = match;
+            this.destination = destination;
+            this.resolution = resolution;
+            this.error = null;
+            this.input = match == null ? null : match.getEpisodeFile().getPath();
+        }
+
+        public Item(Throwable error, String input) {
+            this.match = null;
+            this.destination = null;
+            this.resolution = null;
+            this.error = error;
+            this.input = input;
+        }
+        
+        /**
+         * Set the order this item was matched in, within its source
+         * @param index number of items matched before this item
+         * @return this
+         */
+        public Item matched(long index) {
+            this.index = index;
+            return this;
+        }
+        
+        /**
+         * Set the order this item is transferred in
+         * @param source source of the item or null to be transferred last
+         * @param sequence sequence number to order items of equal priority
+         * @return this
+         */
+        public Item schedule(Source source, long sequence) {
+            this.priority = source == null ? Integer.MIN_VALUE : source.getPriority();
+            this.sequence = sequence;
+            return this;
+        }
+
+        @Override
+        public int compareTo(Item o) {
+            int c = Integer.compare(o.priority, priority);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+        
+        /**
+         * Check if the error of this item only affects this item, so the rest
+         * of the items can still be transferred
+         * @return true if the error is a checked exception, false otherwise
+         */
+        public boolean isRecoverableError() {
+            return error instanceof Exception && !(error instanceof RuntimeException);
+        }
+        
+        public void throwIfError() throws MatchException, IOException {
+            if(error instanceof MatchException) {
+                throw (MatchException) error;
+            } else if(error instanceof IOException) {
+                throw (IOException) error;
+            } else if(error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if(error instanceof Error) {
+                throw (Error) error;
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import uk.co.samicemalone.libtv.exception.MatchException;
+import uk.co.samicemalone.libtv.matcher.path.AliasedTVLibrary;
+import uk.co.samicemalone.libtv.model.AliasMap;
+import uk.co.samicemalone.libtv.model.EpisodeMatch;
+import uk.co.samicemalone.tvmv.io.BandwidthLimits;
+import uk.co.samicemalone.tvmv.io.ConflictResolver;
+import uk.co.samicemalone.tvmv.io.EpisodeIO;
+import uk.co.samicemalone.tvmv.io.EpisodesPathResolver;
+import uk.co.samicemalone.tvmv.io.FingerprintIndex;
+import uk.co.samicemalone.tvmv.io.IOOperation;
+import uk.co.samicemalone.tvmv.io.LibraryInventory;
+import uk.co.samicemalone.tvmv.io.MatchCache;
+import uk.co.samicemalone.tvmv.io.Reclaimer;
+import uk.co.samicemalone.tvmv.io.ShowDirectoryCreator;
+import uk.co.samicemalone.tvmv.io.ShowIndex;
+import uk.co.samicemalone.tvmv.io.reader.AliasReader;
+import uk.co.samicemalone.tvmv.io.reader.StringListReader;
+import uk.co.samicemalone.tvmv.model.Environment;
+import uk.co.samicemalone.tvmv.model.ReplacementMapping;
+
+/**
+ * LibraryContext holds the TV library state built from an initialised
+ * {@link Environment}: the show index, aliases, destination path resolver and
+ * the persistent caches. A single context can run any number of episode
+ * imports, e.g. in server mode, so the state is only built once.
+ * @author Sam Malone
+ */
+public class LibraryContext {
+    
+    private final Environment env;
+    private final ShowIndex showIndex;
+    private final AliasMap aliasMap;
+    private final EpisodesPathResolver pathResolver;
+    private final LibraryInventory inventory;
+    private final FingerprintIndex fingerprintIndex;
+    private MatchCache matchCache;
+
+    /**
+     * Create a new LibraryContext. The TV destinations are indexed, the
+     * aliases are read and then the bandwidth limits in the config are
+     * applied, so the limits are left unchanged if the context fails.
+     * @param env initialised environment
+     * @throws IOException if unable to read the aliases
+     */
+    public LibraryContext(Environment env) throws IOException {
+        this(env, null);
+    }
+
+    /**
+     * Create a new LibraryContext as per {@link #LibraryContext(uk.co.samicemalone.tvmv.model.Environment)}
+     * that reuses the caches of a previous context, e.g. after the config has
+     * been reloaded. The shows indexed by the previous context are reused for
+     * the TV destinations that have not changed.
+     * @param env initialised environment
+     * @param previous previous context or null
+     * @throws IOException if unable to read the aliases
+     */
+    public LibraryContext(Environment env, LibraryContext previous) throws IOException {
+        this.env = env;
+        if(previous == null) {
+            showIndex = new ShowIndex(env.getTvDestinationPaths()).build();
+            inventory = LibraryInventory.load();
+            fingerprintIndex = FingerprintIndex.load();
+        } else {
+            showIndex = previous.showIndex.reload(env.getTvDestinationPaths());
+            inventory = previous.inventory;
+            fingerprintIndex = previous.fingerprintIndex;
+            matchCache = previous.getMatchCache(false);
+        }
+        aliasMap = AliasReader.read(new AliasMap(), showIndex);
+        AliasedTVLibrary library = new AliasedTVLibrary(env.getTvDestinationPaths(), aliasMap);
+        pathResolver = new EpisodesPathResolver(library, showIndex, aliasMap);
+        BandwidthLimits.setLimits(env.getConfig().getBandwidthLimits());
+        BandwidthLimits.setDestinations(env.getTvDestinationPaths());
+        IOOperation.setIOPriority(env.getConfig().getIOPriority());
+    }
+
+    public Environment getEnvironment() {
+        return env;
+    }
+    
+    /**
+     * Create the show directories listed in the CREATE_SHOWS_FILE that do not
+     * already exist in the CREATE_SHOWS_DEST directory
+     * @throws IOException if unable to read the file or create a directory
+     */
+    public void createShows() throws IOException {
+        if(env.getCreateShowsFile() == null || env.getCreateDestShowsDir() == null) {
+            return;
+        }
+        List<String> showNames = StringListReader.read(Paths.get(env.getCreateShowsFile()));
+        ShowDirectoryCreator creator = new ShowDirectoryCreator(Paths.get(env.getCreateDestShowsDir()), showIndex);
+        creator.create(showNames);
+        Display.onShowsCreated(creator.getCreated().size(), creator.getExistingCount(), creator.getFailed());
+        creator.throwIfFailed();
+    }
+    
+    /**
+     * Match and transfer (or replace) the input episodes of the environment
+     * given, according to its arguments. The caches are saved afterwards.
+     * @param runEnv environment of this import, e.g. from {@link Environment#forArgs(uk.co.samicemalone.tvmv.Args)}
+     * @throws IOException if an IO error occurs
+     * @throws MatchException if an input file could not be matched and
+     * unmatched episodes are not skipped
+     */
+    public void run(Environment runEnv) throws IOException, MatchException {
+        Args args = runEnv.getArgs();
+        pathResolver.clear();
+        inventory.reset();
+        fingerprintIndex.reset();
+        MatchCache cache = args.isSkipNotMatchedSet() ? getMatchCache(true) : null;
+        EpisodeMatcher matcher = new EpisodeMatcher(args.getShowOverride(), args.isSkipNotMatchedSet(), cache);
+        Reclaimer reclaimer = args.isReplaceSet() ? Reclaimer.start() : null;
+        EpisodeIO episodeIO = new EpisodeIO(pathResolver, args.isNativeIOSet(), reclaimer);
+        try {
+            episodeIO.setLibraryInventory(inventory);
+            episodeIO.setConflictResolver(new ConflictResolver(env.getConfig().getConflictPolicy()));
+            episodeIO.setFingerprintIndex(fingerprintIndex);
+            episodeIO.setStallTimeout(TimeUnit.SECONDS.toMillis(env.getConfig().getStallTimeout()));
+            Batch batch = new Batch(args.isKeepGoingSet());
+            if(args.isReplaceSet()) {
+                replaceEpisodes(runEnv, matcher, episodeIO, batch);
+            } else {
+                EpisodePipeline pipeline = new EpisodePipeline(matcher, pathResolver, episodeIO);
+                pipeline.setBatch(batch);
+                pipeline.run(runEnv.getSourceFiles(), args.getIOOperation());
+            }
+            batch.finish();
+        } finally {
+            episodeIO.shutdown();
+            if(reclaimer != null) {
+                Display.onReclaimFailures(reclaimer.finish());
+            }
+            save();
+        }
+    }
+    
+    /**
+     * Replace the existing episodes with the input episodes. This is kept
+     * separate from {@link #run(uk.co.samicemalone.tvmv.model.Environment)} so
+     * the replacement classes are only loaded when replacing.
+     */
+    private void replaceEpisodes(Environment runEnv, EpisodeMatcher matcher, EpisodeIO episodeIO, Batch batch) throws IOException, MatchException {
+        List<EpisodeMatch> episodeList = matcher.matchEpisodes(runEnv.getSourcePaths(), batch.getMatchFailureHandler());
+        Set<Path> destPaths = episodeIO.createDestinationDirectories(episodeList);
+        ReplacementMatcher rMatcher = new ReplacementMatcher(inventory);
+        Set<ReplacementMapping<Set<EpisodeMatch>>> rm = rMatcher.matchReplacements(episodeList, destPaths);
+        RetryQueue retries = new RetryQueue(batch);
+        for(ReplacementMapping<Set<EpisodeMatch>> replacementMapping : rm) {
+            retries.transfer(newReplacement(runEnv.getArgs().getIOOperation(), replacementMapping, episodeIO));
+            retries.retryDue();
+        }
+        try {
+            retries.retryAll();
+        } catch (InterruptedException ex) {
+            throw new InterruptedIOException("The replacement was interrupted");
+        }
+    }
+    
+    /**
+     * Create the task that replaces the destination episodes of the mapping,
+     * so it is retried in the same way as the transfers of the pipeline
+     */
+    private static RetryQueue.Task newReplacement(final IOOperation iop, final ReplacementMapping<Set<EpisodeMatch>> mapping, final EpisodeIO episodeIO) {
+        return new RetryQueue.Task(getInputNames(mapping)) {
+            @Override
+            public void transfer() throws IOException {
+                episodeIO.replaceEpisode(iop, mapping);
+            }
+        };
+    }
+    
+    private static String getInputNames(ReplacementMapping<Set<EpisodeMatch>> mapping) {
+        StringBuilder sb = new StringBuilder();
+        for(EpisodeMatch m : mapping.getSource()) {
+            if(sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(m.getEpisodeFile().getPath());
+        }
+        return sb.toString();
+    }
+    
+    private synchronized MatchCache getMatchCache(boolean load) {
+        if(matchCache == null && load) {
+            matchCache = MatchCache.load();
+        }
+        return matchCache;
+    }
+    
+    /**
+     * Save the persistent caches
+     */
+    public void save() {
+        inventory.save();
+        fingerprintIndex.save();
+    }
+    
+}
@@ -29,25 +29,14 @@
 package uk.co.samicemalone.tvmv;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.List;
-import java.util.Set;
-import org.fusesource.jansi.Ansi;
-import org.fusesource.jansi.AnsiConsole;
 import uk.co.samicemalone.libtv.exception.MatchException;
-import uk.co.samicemalone.libtv.matcher.path.AliasedTVLibrary;
-import uk.co.samicemalone.libtv.model.AliasMap;
-import uk.co.samicemalone.libtv.model.EpisodeMatch;
 import uk.co.samicemalone.tvmv.exception.OSNotSupportedException;
-import uk.co.samicemalone.tvmv.io.EpisodeIO;
-import uk.co.samicemalone.tvmv.io.reader.AliasReader;
 import uk.co.samicemalone.tvmv.io.reader.ConfigReader;
-import uk.co.samicemalone.tvmv.io.reader.StringListReader;
 import uk.co.samicemalone.tvmv.model.Config;
 import uk.co.samicemalone.tvmv.model.Environment;
-import uk.co.samicemalone.tvmv.model.ReplacementMapping;
+import uk.co.samicemalone.tvmv.server.TvmvClient;
+import uk.co.samicemalone.tvmv.server.TvmvServer;
 
 /**
  *
@@ -65,51 +54,42 @@ public class Main {
                 printHelp();
                 System.exit(0);
             }
+            if(arguments.isSubmitSet()) {
+                int status = TvmvClient.submit(args);
+                if(status != TvmvClient.NOT_SUBMITTED) {
+                    System.exit(status);
+                }
+            }
             Config config = ConfigReader.read(arguments.getConfigFile());
-            Environment env = new Environment(arguments, config).initialise();
-            run(env);
+            if(arguments.isServerSet()) {
+                Path configFile = ConfigReader.findConfigFile(arguments.getConfigFile());
+                runServer(new Environment(arguments, config).initialiseDestinations(), configFile);
+            } else {
+                run(new Environment(arguments, config).initialise());
+            }
+            Display.flush();
         } catch(Exception e) {
-            AnsiConsole.err().println(Ansi.ansi().render(e.getMessage()));
             Throwable t = e.getCause();
-            if(t != null) {
-                AnsiConsole.err().print(Ansi.ansi().render(" @|yellow Cause|@: "));
-                System.err.println(t.getMessage());
-            }
+            Display.onError(e.getMessage(), t == null ? null : t.getMessage());
             System.exit(1);
         }
     }
     
     private static void run(Environment env) throws IOException, IllegalStateException, OSNotSupportedException, MatchException{
-        AliasMap aliasMap = AliasReader.read(new AliasMap());
-        AliasedTVLibrary library = new AliasedTVLibrary(env.getTvDestinationPaths(), aliasMap);
-        EpisodeMatcher matcher = new EpisodeMatcher(env.getArgs().getShowOverride(), env.getArgs().isSkipNotMatchedSet());
-        EpisodeIO episodeIO = new EpisodeIO(library, env.getArgs().isNativeIOSet());
-        if(env.getCreateShowsFile() != null && env.getCreateDestShowsDir() != null) {
-            for(String showName : StringListReader.read(Paths.get(env.getCreateShowsFile()))) {
-                Path toCreate = Paths.get(env.getCreateDestShowsDir(), showName);
-                if(!Files.exists(toCreate)) {
-                    Files.createDirectory(toCreate);
-                }
-            }
-        }
-        List<EpisodeMatch> episodeList = matcher.matchEpisodes(env.getSourcePaths());
-        Set<Path> destPaths = episodeIO.createDestinationDirectories(episodeList);
-        if(env.getArgs().isReplaceSet()) {
-            ReplacementMatcher rMatcher = new ReplacementMatcher();
-            Set<ReplacementMapping<Set<EpisodeMatch>>> rm = rMatcher.matchReplacements(episodeList, destPaths);
-            for(ReplacementMapping<Set<EpisodeMatch>> replacementMapping : rm) {
-                episodeIO.replaceEpisode(env.getArgs().getIOOperation(), replacementMapping);
-            }
-        } else {
-            for(EpisodeMatch e : episodeList) {
-                Path destDir = library.newEpisodesPath(e.getShow(), e.getSeason());
-                episodeIO.start(env.getArgs().getIOOperation(), e, destDir);
-            }
-        }
+        LibraryContext context = new LibraryContext(env);
+        context.createShows();
+        context.run(env);
+    }
+    
+    private static void runServer(Environment env, Path configFile) throws IOException {
+        LibraryContext context = new LibraryContext(env);
+        context.createShows();
+        new TvmvServer(context, configFile).run();
     }
     
     public static void printHelp() {
-        System.out.println("Usage:   tvmv FILE|DIR... [-chnrs]");
+        System.out.println("Usage:   tvmv FILE|DIR... [-chklnrs]");
+        System.out.println("         tvmv --server");
         System.out.println();
         System.out.println("Matches each episode FILE or each file in DIR to determine the TV show name,");
         System.out.println("season number and episode number. Each episode file will then be moved the");
@@ -123,14 +103,28 @@ public class Main {
         System.out.println("   --config FILE             Use this specific tvmv.conf file");
         System.out.println("   -c, --copy                Copy the input FILEs instead of moving them");
         System.out.println("   -h, --help                Prints this message");
+        System.out.println("   -k, --keep-going          Continue with the other episodes when an episode");
+        System.out.println("                             fails and retry transient errors. Exits with an");
+        System.out.println("                             error after the summary if any episodes failed");
+        System.out.println("   -l, --link                Hard link the input FILEs instead of moving them.");
+        System.out.println("                             Falls back to a copy across filesystems");
         System.out.println("   -n, --native              Use Java NIO API's for IO operations instead of");
         System.out.println("                             Java IO Streams. Native IO will not display a ");
         System.out.println("                             progress bar, but will avoid a copy and delete");
         System.out.println("                             from the same filesystem if moving");
         System.out.println("   -o, --override-show SHOW  Dont detect show, use the value given");
         System.out.println("   -r, --replace             Replaces existing episodes");
+        System.out.println("   --reflink                 Clone the input FILEs (copy-on-write) instead of");
+        System.out.println("                             moving them. Falls back to a copy if unsupported");
         System.out.println("   -s, --skip-not-matched    Skip input files that cannot be matched instead");
         System.out.println("                             of exiting");
+        System.out.println("   --server                  Run as a resident service that imports the FILEs");
+        System.out.println("                             submitted with --submit, one import at a time");
+        System.out.println("   --submit                  Submit the FILEs to the running service instead");
+        System.out.println("                             of importing them. Imports them directly if no");
+        System.out.println("                             service is running");
+        System.out.println("   --symlink                 Leave the input FILEs in place and create symbolic");
+        System.out.println("                             links to them instead of moving them");
         System.out.println();
         System.out.println("TV show aliases can be defined in aliases.txt");
     }
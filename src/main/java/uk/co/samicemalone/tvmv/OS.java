@@ -59,6 +59,14 @@ public class OS {
         return isWindows || isUnix || isMac;
     }
 
+    /**
+     * Check if the operating system is Windows and supports Libraries
+     * @return true if os supported, false otherwise
+     */
+    public static boolean isWindowsLibrarySupported() {
+        return OS.matches("windows (7|8|10|11)");
+    }
+
     public static boolean isCygwinPath(String path) {
         return path.startsWith("/cygdrive/");
     }
@@ -41,6 +41,7 @@ import uk.co.samicemalone.libtv.matcher.EpisodeMatcher;
 import uk.co.samicemalone.libtv.model.EpisodeMatch;
 import uk.co.samicemalone.libtv.model.TVMap;
 import uk.co.samicemalone.libtv.util.PathUtil;
+import uk.co.samicemalone.tvmv.io.LibraryInventory;
 import uk.co.samicemalone.tvmv.model.ReplacementMapping;
 
 /**
@@ -125,15 +126,30 @@ public class ReplacementMatcher {
     
     private final TVMap tvMap;
     private final EpisodeMatcher episodeMatcher;
+    private final LibraryInventory inventory;
 
     public ReplacementMatcher() {
+        this(null);
+    }
+
+    /**
+     * Create a new ReplacementMatcher
+     * @param inventory LibraryInventory used to list the destination paths or
+     * null to list them from the file system
+     */
+    public ReplacementMatcher(LibraryInventory inventory) {
         tvMap = new TVMap();
         episodeMatcher = new EpisodeMatcher();
+        this.inventory = inventory;
     }
     
     private void buildDestinationMap(Collection<Path> destinationDirPaths) throws IOException {
         for(Path destDir : destinationDirPaths) {
-            tvMap.addEpisodes(episodeMatcher.match(PathUtil.listPaths(destDir, new VideoFilter())));
+            if(inventory == null) {
+                tvMap.addEpisodes(episodeMatcher.match(PathUtil.listPaths(destDir, new VideoFilter())));
+            } else {
+                tvMap.addEpisodes(episodeMatcher.match(inventory.listEpisodes(destDir)));
+            }
         }
     }
     
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import uk.co.samicemalone.tvmv.exception.TransferStalledException;
+
+/**
+ * RetryQueue transfers episodes and defers the transfers that fail with a
+ * retryable error until after the other episodes, with the delay doubling
+ * after each attempt, so a stuck file doesn't hold up the rest of the episodes.
+ * A transfer that stalled and was stopped is always retryable. If the
+ * {@link Batch} keeps going, any transient error is retryable too and a
+ * transfer that fails is recorded in the batch instead of ending the run.
+ * @author Sam Malone
+ */
+public class RetryQueue {
+    
+    private static final Comparator<Task> RETRY_ORDER = new Comparator<Task>() {
+        @Override
+        public int compare(Task t1, Task t2) {
+            return Long.compare(t1.retryAt, t2.retryAt);
+        }
+    };
+    
+    private final Batch batch;
+    private final Queue<Task> retries;
+
+    public RetryQueue(Batch batch) {
+        this.batch = batch;
+        this.retries = new PriorityQueue<>(11, RETRY_ORDER);
+    }
+    
+    /**
+     * Check if the error of a transfer should be retried
+     * @param e transfer error
+     * @return true if retryable, false otherwise
+     */
+    public boolean isRetryable(IOException e) {
+        if(e instanceof TransferStalledException && ((TransferStalledException) e).isStopped()) {
+            return true;
+        }
+        return batch.isKeepGoing() && Batch.isTransient(e);
+    }
+    
+    /**
+     * Run the transfer of the task. If it fails with a retryable error, the
+     * task is queued to be retried unless it has been retried too many times.
+     * @param task task to transfer
+     * @throws IOException if the transfer fails and the batch doesn't keep going
+     */
+    public void transfer(Task task) throws IOException {
+        try {
+            task.transfer();
+            batch.onCompleted();
+        } catch (IOException e) {
+            if(isRetryable(e) && task.attempts < Batch.MAX_RETRIES) {
+                long delay = Batch.getRetryDelay(task.attempts++);
+                task.retryAt = System.currentTimeMillis() + delay;
+                retries.add(task);
+                Display.onTransferRetry(e.getMessage(), delay);
+            } else if(batch.isKeepGoing()) {
+                batch.onFailed(task.input, e);
+            } else {
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Get the time until the next retry is due
+     * @return delay in milliseconds (0 if already due) or -1 if there are no
+     * transfers to retry
+     */
+    public long getNextDelay() {
+        Task next = retries.peek();
+        return next == null ? -1 : Math.max(0, next.retryAt - System.currentTimeMillis());
+    }
+    
+    /**
+     * Retry the transfers that are due now
+     * @throws IOException if a transfer fails and the batch doesn't keep going
+     */
+    public void retryDue() throws IOException {
+        while(getNextDelay() == 0) {
+            transfer(retries.remove());
+        }
+    }
+    
+    /**
+     * Retry every queued transfer, waiting for each to be due
+     * @throws IOException if a transfer fails and the batch doesn't keep going
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void retryAll() throws IOException, InterruptedException {
+        long delay;
+        while((delay = getNextDelay()) >= 0) {
+            Thread.sleep(delay);
+            transfer(retries.remove());
+        }
+    }
+    
+    /**
+     * Task is a transfer that can be retried
+     */
+    public static abstract class Task {
+        
+        private final String input;
+        private int attempts;
+        private long retryAt;
+
+        /**
+         * Create a new Task
+         * @param input input file(s) of the transfer, recorded if it fails
+         */
+        public Task(String input) {
+            this.input = input;
+        }
+        
+        /**
+         * Transfer the episode(s) of this task
+         * @throws IOException if the transfer fails
+         */
+        public abstract void transfer() throws IOException;
+        
+    }
+    
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BandwidthLimits holds the {@link RateLimiter} for each TV destination that
+ * has a bandwidth limit. Every transfer to the same destination shares the
+ * same limiter so the limit applies to all of them together. A default limit
+ * can be set for destinations without a limit of their own, in which case
+ * each of those destinations has its own limiter at the default rate.
+ * @author Sam Malone
+ */
+public class BandwidthLimits {
+    
+    private static final Map<Path, RateLimiter> LIMITERS = new ConcurrentHashMap<>();
+    private static final Map<Path, RateLimiter> DEFAULT_LIMITERS = new ConcurrentHashMap<>();
+    private static final Set<Path> DESTINATIONS = ConcurrentHashMap.newKeySet();
+    private static volatile long defaultRate;
+    
+    /**
+     * Parse a bandwidth rate such as 500K, 10M or 1G (bytes per second, using
+     * multiples of 1024)
+     * @param rate rate to parse
+     * @return bytes per second
+     * @throws NumberFormatException if the rate is not valid
+     */
+    public static long parseRate(String rate) {
+        long multiplier = 1;
+        String number = rate.trim();
+        switch(Character.toUpperCase(number.charAt(number.length() - 1))) {
+            case 'G':
+                multiplier *= 1024;
+            case 'M':
+                multiplier *= 1024;
+            case 'K':
+                multiplier *= 1024;
+                number = number.substring(0, number.length() - 1);
+                break;
+        }
+        long bytes = Long.parseLong(number.trim()) * multiplier;
+        if(bytes < 0) {
+            throw new NumberFormatException("Negative rate: " + rate);
+        }
+        return bytes;
+    }
+    
+    /**
+     * Set the bandwidth limit for the given destination. If the destination
+     * already has a limit, the limit is changed for the transfers in progress.
+     * @param destination TV destination root or null for the default limit
+     * @param bytesPerSecond maximum bytes per second or 0 for unlimited
+     */
+    public static void setLimit(String destination, long bytesPerSecond) {
+        if(destination == null) {
+            defaultRate = bytesPerSecond;
+            for(RateLimiter limiter : DEFAULT_LIMITERS.values()) {
+                limiter.setRate(bytesPerSecond);
+            }
+            return;
+        }
+        Path root = Paths.get(destination).toAbsolutePath().normalize();
+        RateLimiter limiter = LIMITERS.putIfAbsent(root, new RateLimiter(bytesPerSecond));
+        if(limiter != null) {
+            limiter.setRate(bytesPerSecond);
+        }
+    }
+    
+    /**
+     * Replace all of the bandwidth limits with the limits given. Limits that
+     * are not given are set to unlimited, including for the transfers in
+     * progress.
+     * @param limits bytes per second keyed by TV destination root, with a
+     * null key for the default limit
+     */
+    public static synchronized void setLimits(Map<String, Long> limits) {
+        setLimit(null, 0);
+        for(RateLimiter limiter : LIMITERS.values()) {
+            limiter.setRate(0);
+        }
+        for(Map.Entry<String, Long> limit : limits.entrySet()) {
+            setLimit(limit.getKey(), limit.getValue());
+        }
+    }
+    
+    /**
+     * Set the TV destination roots that get their own limiter when the
+     * default limit applies
+     * @param destinations TV destination roots
+     */
+    public static synchronized void setDestinations(List<String> destinations) {
+        DESTINATIONS.clear();
+        for(String destination : destinations) {
+            DESTINATIONS.add(Paths.get(destination).toAbsolutePath().normalize());
+        }
+    }
+    
+    /**
+     * Get the RateLimiter for the given destination path. The limiter for the
+     * closest TV destination root containing the path is used. If that root
+     * has no limit of its own, the default limiter of the root is used. A path
+     * that is not in a known TV destination uses the default limiter of its
+     * directory.
+     * @param destination destination path
+     * @return RateLimiter or null if the transfer is not limited
+     */
+    public static RateLimiter getLimiter(Path destination) {
+        Path p = destination.toAbsolutePath().normalize();
+        Path defaultKey = null;
+        while(p != null) {
+            RateLimiter limiter = LIMITERS.get(p);
+            if(limiter != null) {
+                return limiter;
+            }
+            if(defaultKey == null && DESTINATIONS.contains(p)) {
+                defaultKey = p;
+            }
+            p = p.getParent();
+        }
+        if(defaultKey == null) {
+            defaultKey = destination.toAbsolutePath().normalize().getParent();
+        }
+        long rate = defaultRate;
+        if(rate <= 0 || defaultKey == null) {
+            return null;
+        }
+        RateLimiter limiter = DEFAULT_LIMITERS.get(defaultKey);
+        if(limiter == null) {
+            RateLimiter existing = DEFAULT_LIMITERS.putIfAbsent(defaultKey, limiter = new RateLimiter(rate));
+            if(existing != null) {
+                limiter = existing;
+            }
+        }
+        return limiter;
+    }
+    
+}
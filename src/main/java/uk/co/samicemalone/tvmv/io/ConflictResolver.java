@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import uk.co.samicemalone.tvmv.model.ConflictPolicy;
+
+/**
+ * ConflictResolver decides what to do with an episode whose destination file
+ * already exists. If the files are identical, the episode is skipped.
+ * Otherwise the {@link ConflictPolicy} is applied.
+ * @author Sam Malone
+ */
+public class ConflictResolver {
+    
+    public enum Resolution {
+        /**
+         * The destination does not exist
+         */
+        TRANSFER,
+        /**
+         * The destination is identical to the source
+         */
+        DUPLICATE,
+        /**
+         * The destination should be kept
+         */
+        KEEP_EXISTING,
+        /**
+         * The destination should be replaced by the source
+         */
+        REPLACE;
+    }
+    
+    private final ConflictPolicy policy;
+
+    public ConflictResolver(ConflictPolicy policy) {
+        this.policy = policy;
+    }
+    
+    /**
+     * Resolve the conflict between the source file and the existing
+     * destination file
+     * @param source source file
+     * @param destination existing destination file
+     * @return resolution of the conflict
+     * @throws FileAlreadyExistsException if the policy is {@link ConflictPolicy#ABORT}
+     * and the files are not identical
+     * @throws IOException if unable to compare the files
+     */
+    public Resolution resolve(Path source, Path destination) throws IOException {
+        if(FileFingerprint.isIdentical(source, destination)) {
+            return Resolution.DUPLICATE;
+        }
+        switch(policy) {
+            case SKIP:
+                return Resolution.KEEP_EXISTING;
+            case LARGER:
+                return Files.size(source) > Files.size(destination) ? Resolution.REPLACE : Resolution.KEEP_EXISTING;
+            case NEWER:
+                int cmp = Files.getLastModifiedTime(source).compareTo(Files.getLastModifiedTime(destination));
+                return cmp > 0 ? Resolution.REPLACE : Resolution.KEEP_EXISTING;
+            default:
+                throw new FileAlreadyExistsException(source.toAbsolutePath().toString(), destination.toString(), "Destination file already exists.");
+        }
+    }
+    
+}
@@ -31,17 +31,27 @@ package uk.co.samicemalone.tvmv.io;
 import java.io.IOException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import uk.co.samicemalone.libtv.exception.SeasonsPathNotFoundException;
 import uk.co.samicemalone.libtv.matcher.path.AliasedTVLibrary;
 import uk.co.samicemalone.libtv.model.EpisodeMatch;
+import uk.co.samicemalone.tvmv.DaemonThreadFactory;
 import uk.co.samicemalone.tvmv.Display;
 import uk.co.samicemalone.tvmv.exception.FileStillExistsException;
+import uk.co.samicemalone.tvmv.exception.TransferStalledException;
+import uk.co.samicemalone.tvmv.io.ConflictResolver.Resolution;
 import uk.co.samicemalone.tvmv.model.DequeStack;
 import uk.co.samicemalone.tvmv.model.ReplacementMapping;
 import uk.co.samicemalone.tvmv.model.Stack;
@@ -51,13 +61,89 @@ import uk.co.samicemalone.tvmv.model.Stack;
  * @author Sam Malone
  */
 public class EpisodeIO {
+    
+    private static final int STASH_THREADS = 4;
 
-    private final AliasedTVLibrary tvLibrary;
+    private final EpisodesPathResolver pathResolver;
     private final boolean useNativeIO;
+    private ExecutorService stashExecutor;
+    private final Reclaimer reclaimer;
+    private LibraryInventory inventory;
+    private ConflictResolver conflictResolver;
+    private FingerprintIndex fingerprintIndex;
+    private long stallTimeout;
+    private final Set<Path> reservedPaths = new HashSet<>();
 
     public EpisodeIO(AliasedTVLibrary tvLibrary, boolean useNativeIO) {
-        this.tvLibrary = tvLibrary;
+        this(new EpisodesPathResolver(tvLibrary), useNativeIO);
+    }
+
+    public EpisodeIO(EpisodesPathResolver pathResolver, boolean useNativeIO) {
+        this(pathResolver, useNativeIO, null);
+    }
+
+    /**
+     * Create a new EpisodeIO instance
+     * @param pathResolver resolver for the destination episodes directories
+     * @param useNativeIO true to use native IO, false to display progress
+     * @param reclaimer Reclaimer used to delete replaced episodes in the
+     * background or null to delete them before replaceEpisode returns
+     */
+    public EpisodeIO(EpisodesPathResolver pathResolver, boolean useNativeIO, Reclaimer reclaimer) {
+        this.pathResolver = pathResolver;
         this.useNativeIO = useNativeIO;
+        this.reclaimer = reclaimer;
+    }
+    
+    /**
+     * Set the LibraryInventory used to check if destination files exist. The
+     * inventory is updated with each file added or removed by this EpisodeIO.
+     * @param inventory LibraryInventory or null to check the file system
+     */
+    public void setLibraryInventory(LibraryInventory inventory) {
+        this.inventory = inventory;
+    }
+    
+    /**
+     * Set the ConflictResolver used when a destination file already exists
+     * @param conflictResolver ConflictResolver or null to fail if a
+     * destination file already exists
+     */
+    public void setConflictResolver(ConflictResolver conflictResolver) {
+        this.conflictResolver = conflictResolver;
+    }
+    
+    /**
+     * Set the FingerprintIndex used to find episodes that have already been
+     * filed under a different name. The index is updated with each episode
+     * transferred by this EpisodeIO.
+     * @param fingerprintIndex FingerprintIndex or null to disable
+     */
+    public void setFingerprintIndex(FingerprintIndex fingerprintIndex) {
+        this.fingerprintIndex = fingerprintIndex;
+    }
+    
+    /**
+     * Set the time after which a transfer that has not written any data is
+     * aborted and rolled back with a TransferStalledException
+     * @param stallTimeout stall timeout in milliseconds or 0 to never abort
+     */
+    public void setStallTimeout(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+    
+    /**
+     * Find an episode with the same contents as the source episode that has
+     * already been filed, possibly under a different file name
+     * @param sourceEpisode EpisodeMatch to be transferred
+     * @return path of the filed episode or null if not found
+     * @throws IOException if unable to read the source episode
+     */
+    public Path findFiled(EpisodeMatch sourceEpisode) throws IOException {
+        if(fingerprintIndex == null) {
+            return null;
+        }
+        return fingerprintIndex.find(sourceEpisode.getEpisodeFile().toPath());
     }
     
     /**
@@ -67,30 +153,182 @@ public class EpisodeIO {
      * @param iop IOOperation used to determine operation type e.g. copy or move
      * @param sourceEpisode EpisodeMatch to startNative IO
      * @param destinationDir destination path to store the source episode
-     * @throws IOException if the destination file already exists or
-     * if an IO error occurs
+     * @throws IOException if the destination file already exists and the
+     * conflict cannot be resolved or if an IO error occurs
      */
     public void start(IOOperation iop, EpisodeMatch sourceEpisode, Path destinationDir) throws IOException {
-        Path destPath = destinationDir.resolve(sourceEpisode.getEpisodeFile().getName());
-        if(Files.exists(destPath)) {
+        Path filedPath = findFiled(sourceEpisode);
+        if(filedPath != null) {
+            transfer(iop, sourceEpisode, filedPath, Resolution.DUPLICATE);
+            return;
+        }
+        Path destPath = getDestinationPath(sourceEpisode, destinationDir);
+        transfer(iop, sourceEpisode, destPath, checkDestination(sourceEpisode, destPath));
+    }
+    
+    /**
+     * Get the destination path for the source episode in the destination
+     * directory given
+     * @param sourceEpisode EpisodeMatch to be transferred
+     * @param destinationDir destination path to store the source episode
+     * @return destination path of the source episode
+     */
+    public Path getDestinationPath(EpisodeMatch sourceEpisode, Path destinationDir) {
+        return destinationDir.resolve(sourceEpisode.getEpisodeFile().getName());
+    }
+    
+    /**
+     * Check if the destination path already exists and if so, resolve the
+     * conflict with the source episode
+     * @param sourceEpisode EpisodeMatch to be transferred
+     * @param destPath destination path of the source episode
+     * @return resolution of the conflict or {@link Resolution#TRANSFER} if the
+     * destination does not exist
+     * @throws IOException if the destination file already exists and the
+     * conflict cannot be resolved, or if another episode will be transferred
+     * to the destination path
+     */
+    public Resolution checkDestination(EpisodeMatch sourceEpisode, Path destPath) throws IOException {
+        if(!exists(destPath)) {
+            reserve(sourceEpisode, destPath);
+            return Resolution.TRANSFER;
+        }
+        if(conflictResolver == null) {
             throw new FileAlreadyExistsException(sourceEpisode.getEpisodeFile().getAbsolutePath(), destPath.toString(), "Destination file already exists.");
         }
-        iop.setOperands(sourceEpisode.getEpisodeFile().toPath(), destPath);
-        Display.onPreIO(iop, useNativeIO);
-        if(useNativeIO) {
-            iop.startNative();
+        Resolution resolution = conflictResolver.resolve(sourceEpisode.getEpisodeFile().toPath(), destPath);
+        if(resolution == Resolution.DUPLICATE && fingerprintIndex != null) {
+            fingerprintIndex.add(sourceEpisode.getEpisodeFile().toPath(), destPath);
+        } else if(resolution == Resolution.REPLACE) {
+            reserve(sourceEpisode, destPath);
+        }
+        return resolution;
+    }
+    
+    /**
+     * Check if the destination path exists, using the inventory if set so
+     * the destination directory is only listed once per run
+     */
+    private boolean exists(Path destPath) throws IOException {
+        return inventory == null ? Files.exists(destPath, LinkOption.NOFOLLOW_LINKS) : inventory.contains(destPath);
+    }
+    
+    /**
+     * Reserve the destination path for the source episode until it has been
+     * transferred, so the destination of an episode that has been checked but
+     * not yet transferred is treated as existing
+     * @throws FileAlreadyExistsException if the path is already reserved
+     */
+    private void reserve(EpisodeMatch sourceEpisode, Path destPath) throws FileAlreadyExistsException {
+        synchronized(reservedPaths) {
+            if(!reservedPaths.add(destPath)) {
+                throw new FileAlreadyExistsException(sourceEpisode.getEpisodeFile().getAbsolutePath(), destPath.toString(), "Destination file already exists.");
+            }
+        }
+    }
+    
+    private void release(Path destPath) {
+        synchronized(reservedPaths) {
+            reservedPaths.remove(destPath);
+        }
+    }
+    
+    /**
+     * Start the IO operation using the EpisodeMatch as the source path and
+     * the destination path given, according to the resolution returned by
+     * {@link #checkDestination(uk.co.samicemalone.libtv.model.EpisodeMatch, java.nio.file.Path)}.
+     * If the destination is to be replaced, it is moved to a temporary file
+     * first and restored if the IO operation fails.
+     * @param iop IOOperation used to determine operation type e.g. copy or move
+     * @param sourceEpisode EpisodeMatch to startNative IO
+     * @param destPath destination path of the source episode
+     * @param resolution resolution of the destination path
+     * @throws IOException if an IO error occurs
+     */
+    public void transfer(IOOperation iop, EpisodeMatch sourceEpisode, Path destPath, Resolution resolution) throws IOException {
+        switch(resolution) {
+            case DUPLICATE:
+                Display.onSkipDuplicate(sourceEpisode.getEpisodeFile().toPath(), destPath);
+                break;
+            case KEEP_EXISTING:
+                Display.onSkipConflict(sourceEpisode.getEpisodeFile().toPath(), destPath);
+                break;
+            case REPLACE:
+                try {
+                    replaceFile(iop, sourceEpisode, destPath);
+                } finally {
+                    release(destPath);
+                }
+                break;
+            default:
+                try {
+                    if(exists(destPath)) {
+                        throw new FileAlreadyExistsException(sourceEpisode.getEpisodeFile().getAbsolutePath(), destPath.toString(), "Destination file already exists.");
+                    }
+                    transfer(iop, sourceEpisode, destPath);
+                } finally {
+                    release(destPath);
+                }
+        }
+    }
+    
+    private void replaceFile(IOOperation iop, EpisodeMatch sourceEpisode, Path destPath) throws IOException {
+        IOOperation stashed = stash(destPath);
+        try {
+            transfer(iop, sourceEpisode, destPath);
+        } catch (FileStillExistsException e) {
+            deleteQuietly(destPath);
+            stashed.rollback();
+            throw e;
+        } catch (TransferStalledException e) {
+            if(!e.isStopped()) {
+                if(inventory != null) {
+                    inventory.onRemoved(destPath);
+                }
+                throw newStashKeptException(e, destPath.getParent());
+            }
+            stashed.rollback();
+            throw e;
+        } catch (IOException e) {
+            stashed.rollback();
+            throw e;
+        }
+        if(reclaimer != null) {
+            reclaimer.reclaim(Collections.singletonList(stashed.getDestination()));
         } else {
-            iop.startProgress();
+            deleteAllPaths(destPath.getParent(), Collections.singletonList(stashed.getDestination()));
         }
-        Display.onPostIO(useNativeIO);
+    }
+    
+    private void transfer(IOOperation iop, EpisodeMatch sourceEpisode, Path destPath) throws IOException {
+        iop.setOperands(sourceEpisode.getEpisodeFile().toPath(), destPath);
+        boolean isNative = useNativeIO || iop.isMetadataOnly();
+        Display.onPreIO(iop, isNative);
+        try {
+            iop.setStallTimeout(stallTimeout).start(isNative);
+        } catch (TransferStalledException e) {
+            throw e;
+        } catch (IOException e) {
+            Display.onIOFailed(isNative);
+            throw e;
+        }
+        if(inventory != null) {
+            inventory.onAdded(destPath);
+        }
+        if(fingerprintIndex != null) {
+            fingerprintIndex.add(sourceEpisode.getEpisodeFile().toPath(), destPath);
+        }
+        Display.onPostIO(isNative);
     }
     
     /**
      * Replaces existing episodes according the IO operation and mapping specified.
      * The replacement is implemented by moving the destination file(s) to a 
-     * temporary file in the same directory. The source(s) are then moved/copied
+     * temporary file in the same directory. The destination files are moved
+     * concurrently, but are rolled back in order. The source(s) are then moved/copied
      * to the destination. If the IO operation was successful, the old temporary
-     * destination file will be deleted. Otherwise an attempt will be made to
+     * destination file will be deleted (in the background if this EpisodeIO has
+     * a {@link Reclaimer}). Otherwise an attempt will be made to
      * roll back the IO operation.
      * @param iop IOOperation used to determine operation type e.g. copy or move
      * @param mapping a mapping of source episodes required to replace the 
@@ -104,21 +342,15 @@ public class EpisodeIO {
         IOOperation io = null;
         try {
             Display.onPreRemoveOld(mapping.getDestination().size());
-            for(EpisodeMatch destMatch : mapping.getDestination()) {
-                String destFileName = destMatch.getEpisodeFile().getName();
-                Path tmpPath = Files.createTempFile(destDir, destFileName, ".old.tmp");
-                tmpDestinations.add(tmpPath);
-                io = new MoveOperation().setOperands(destMatch.getEpisodeFile().toPath(), tmpPath);
-                Display.onPreIORemoveOld(destFileName);
-                tmpTransactions.push(io.startNative());
-            }
+            stashAll(mapping.getDestination(), tmpDestinations, tmpTransactions);
             Display.onPreReplace(iop.getType(), mapping.getDestination().size());
             for(EpisodeMatch sourceMatch : mapping.getSource()) {
                 Path destPath = destDir.resolve(sourceMatch.getEpisodeFile().getName());
                 io = iop.newInstance().setOperands(sourceMatch.getEpisodeFile().toPath(), destPath);
-                Display.onPreIOReplace(io, useNativeIO);
-                tmpTransactions.push(useNativeIO ? io.startNative() : io.startProgress());
-                Display.onPostIOReplace(useNativeIO);
+                boolean isNative = useNativeIO || io.isMetadataOnly();
+                Display.onPreIOReplace(io, isNative);
+                tmpTransactions.push(io.setStallTimeout(stallTimeout).start(isNative));
+                Display.onPostIOReplace(isNative);
             }
         } catch (FileStillExistsException e) {
             if(io != null) {
@@ -126,11 +358,129 @@ public class EpisodeIO {
             }
             rollback(tmpTransactions);
             throw e;
+        } catch (TransferStalledException e) {
+            if(!e.isStopped()) {
+                throw newStashKeptException(e, destDir);
+            }
+            rollback(tmpTransactions);
+            throw e;
         } catch (IOException e) {
             rollback(tmpTransactions);
             throw e;
         }
-        deleteAllPaths(destDir, tmpDestinations);
+        if(inventory != null) {
+            for(EpisodeMatch destMatch : mapping.getDestination()) {
+                inventory.onRemoved(destMatch.getEpisodeFile().toPath());
+            }
+            for(EpisodeMatch sourceMatch : mapping.getSource()) {
+                inventory.onAdded(destDir.resolve(sourceMatch.getEpisodeFile().getName()));
+            }
+        }
+        if(fingerprintIndex != null) {
+            for(EpisodeMatch sourceMatch : mapping.getSource()) {
+                fingerprintIndex.add(sourceMatch.getEpisodeFile().toPath(), destDir.resolve(sourceMatch.getEpisodeFile().getName()));
+            }
+        }
+        if(reclaimer != null) {
+            reclaimer.reclaim(tmpDestinations);
+        } else {
+            deleteAllPaths(destDir, tmpDestinations);
+        }
+    }
+    
+    /**
+     * Move each of the destination episodes to a temporary file in its directory
+     * concurrently. The moves that succeed are pushed onto the transactions
+     * stack in the order given, even if another move fails.
+     * @param destMatches destination episodes to move
+     * @param tmpDestinations list to add the temporary file paths to
+     * @param transactions stack to push the completed moves onto
+     * @throws IOException if any of the moves failed
+     */
+    private void stashAll(Collection<EpisodeMatch> destMatches, List<Path> tmpDestinations, Stack<IOOperation> transactions) throws IOException {
+        List<Future<IOOperation>> stashed = new ArrayList<>(destMatches.size());
+        for(final EpisodeMatch destMatch : destMatches) {
+            stashed.add(getStashExecutor().submit(new Callable<IOOperation>() {
+                @Override
+                public IOOperation call() throws IOException {
+                    return stash(destMatch.getEpisodeFile().toPath());
+                }
+            }));
+        }
+        IOException error = null;
+        for(Future<IOOperation> f : stashed) {
+            try {
+                IOOperation io = getUninterruptibly(f);
+                tmpDestinations.add(io.getDestination());
+                transactions.push(io);
+                Display.onPreIORemoveOld(io.getSource().getFileName().toString());
+            } catch (IOException e) {
+                if(error == null) {
+                    error = e;
+                }
+            }
+        }
+        if(error != null) {
+            throw error;
+        }
+    }
+    
+    /**
+     * Stop the threads used to replace episodes. This EpisodeIO can still be
+     * used afterwards.
+     */
+    public synchronized void shutdown() {
+        if(stashExecutor != null) {
+            stashExecutor.shutdown();
+            stashExecutor = null;
+        }
+    }
+    
+    private synchronized ExecutorService getStashExecutor() {
+        if(stashExecutor == null) {
+            stashExecutor = Executors.newFixedThreadPool(STASH_THREADS, new DaemonThreadFactory("tvmv-stash"));
+        }
+        return stashExecutor;
+    }
+    
+    private IOOperation stash(Path file) throws IOException {
+        Path tmpPath = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".old.tmp");
+        try {
+            return new MoveOperation().setOperands(file, tmpPath).startNative();
+        } catch (IOException e) {
+            deleteQuietly(tmpPath);
+            throw e;
+        }
+    }
+    
+    /**
+     * Wait for the result of the future, even if interrupted, so that the
+     * result is never lost
+     * @param <T> result type
+     * @param f future to wait for
+     * @return result of the future
+     * @throws IOException if the task threw an exception
+     */
+    private static <T> T getUninterruptibly(Future<T> f) throws IOException {
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    return f.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if(e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
     
     private void deleteQuietly(Path p) {
@@ -141,20 +491,47 @@ public class EpisodeIO {
         }
     }
     
+    /**
+     * Delete the stashed episodes that have been replaced. More than one path
+     * is deleted concurrently using the stash threads.
+     * @param destDir destination directory of the replaced episodes
+     * @param paths stashed episodes to delete
+     * @throws IOException if any of the paths could not be deleted
+     */
     private void deleteAllPaths(Path destDir, Collection<Path> paths) throws IOException {
         boolean deletedAll = true;
-        for(Path tmpDestPath : paths) {
-            deletedAll &= tmpDestPath.toFile().delete();
+        if(paths.size() == 1) {
+            deletedAll = paths.iterator().next().toFile().delete();
+        } else {
+            List<Future<Boolean>> deleted = new ArrayList<>(paths.size());
+            for(final Path tmpDestPath : paths) {
+                deleted.add(getStashExecutor().submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return tmpDestPath.toFile().delete();
+                    }
+                }));
+            }
+            for(Future<Boolean> f : deleted) {
+                deletedAll &= getUninterruptibly(f);
+            }
         }
         if(!deletedAll) {
             throw new IOException("Unable to delete an existing episode that is to be replaced. Check " + destDir + " for .tmp files.");
         }
     }
     
+    /**
+     * A replacement whose transfer could not be stopped is not rolled back, as
+     * the transfer may still overwrite the restored episodes
+     */
+    private static TransferStalledException newStashKeptException(TransferStalledException e, Path destDir) {
+        return new TransferStalledException(e.getMessage() + ". The replaced episodes have been kept in " + destDir + " as .old.tmp files.", false);
+    }
+    
     private void rollback(Stack<IOOperation> transactions) {
         IOOperation io;
         while((io = transactions.pop()) != null) {
-            //Display.onIORollback(io);
             io.rollback();
         }
     }
@@ -169,13 +546,13 @@ public class EpisodeIO {
     public Set<Path> createDestinationDirectories(Collection<EpisodeMatch> sourceEpisodes) throws IOException {
         Set<Path> paths = new HashSet<>(sourceEpisodes.size());
         for(EpisodeMatch e : sourceEpisodes) {
-            paths.add(tvLibrary.newEpisodesPath(e.getShow(), e.getSeason()));
+            paths.add(pathResolver.newEpisodesPath(e.getShow(), e.getSeason()));
         }
         return paths;
     }
     
     private Path getEpisodesPath(EpisodeMatch m) {
-        return tvLibrary.getEpisodesPath(m.getShow(), m.getSeason());
+        return pathResolver.getEpisodesPath(m.getShow(), m.getSeason());
     }
     
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import uk.co.samicemalone.libtv.exception.SeasonsPathNotFoundException;
+import uk.co.samicemalone.libtv.matcher.path.AliasedTVLibrary;
+import uk.co.samicemalone.libtv.model.AliasMap;
+
+/**
+ * EpisodesPathResolver memoizes the episodes directory resolved for each show
+ * and season so the destination roots are only probed once per season rather
+ * than once per episode. Shows that cannot be found are cached too, but a new
+ * exception is thrown for each lookup.
+ * <p>If a {@link ShowIndex} is given, the root containing the show is looked up
+ * in the index and only that root is probed. Shows missing from the index
+ * fall back to probing every root.
+ * @author Sam Malone
+ */
+public class EpisodesPathResolver {
+    
+    private final AliasedTVLibrary tvLibrary;
+    private final ShowIndex showIndex;
+    private final AliasMap aliasMap;
+    private final Map<String, AliasedTVLibrary> rootLibraries;
+    private final Map<String, Path> episodesPaths;
+    private final Set<String> createdPaths;
+    private final Map<String, String> showsNotFound;
+
+    public EpisodesPathResolver(AliasedTVLibrary tvLibrary) {
+        this(tvLibrary, null, null);
+    }
+
+    /**
+     * Create a new EpisodesPathResolver that uses the show index given to
+     * find the root containing a show
+     * @param tvLibrary TV library containing every TV destination root
+     * @param showIndex show index of the TV destination roots or null
+     * @param aliasMap show aliases used by tvLibrary
+     */
+    public EpisodesPathResolver(AliasedTVLibrary tvLibrary, ShowIndex showIndex, AliasMap aliasMap) {
+        this.tvLibrary = tvLibrary;
+        this.showIndex = showIndex;
+        this.aliasMap = aliasMap;
+        rootLibraries = new HashMap<>();
+        episodesPaths = new HashMap<>();
+        createdPaths = new HashSet<>();
+        showsNotFound = new HashMap<>();
+    }
+    
+    /**
+     * Get the episodes directory for the given show and season, creating the
+     * season directory if it does not exist.
+     * @param show TV show
+     * @param season season number
+     * @return episodes directory path
+     * @throws SeasonsPathNotFoundException if unable to find the seasons path
+     * @throws IOException if unable to create the episodes directory
+     */
+    public synchronized Path newEpisodesPath(String show, int season) throws IOException {
+        String key = toKey(show, season);
+        Path p = episodesPaths.get(key);
+        if(p != null) {
+            if(!createdPaths.contains(key)) {
+                Files.createDirectories(p);
+                createdPaths.add(key);
+            }
+            return p;
+        }
+        String showKey = toShowKey(show);
+        String notFound = showsNotFound.get(showKey);
+        if(notFound != null) {
+            throw new SeasonsPathNotFoundException(notFound);
+        }
+        try {
+            p = getLibrary(show).newEpisodesPath(show, season);
+        } catch(SeasonsPathNotFoundException e) {
+            showsNotFound.put(showKey, e.getMessage());
+            throw e;
+        }
+        episodesPaths.put(key, p);
+        createdPaths.add(key);
+        return p;
+    }
+    
+    /**
+     * Get the episodes directory for the given show and season. The
+     * directory is not created, so it may not exist.
+     * @param show TV show
+     * @param season season number
+     * @return episodes directory path
+     */
+    public synchronized Path getEpisodesPath(String show, int season) {
+        String key = toKey(show, season);
+        Path p = episodesPaths.get(key);
+        if(p == null) {
+            p = getLibrary(show).getEpisodesPath(show, season);
+            if(p != null) {
+                episodesPaths.put(key, p);
+            }
+        }
+        return p;
+    }
+    
+    /**
+     * Forget the episodes directories and the shows not found that have been
+     * resolved, so shows and seasons created or removed since are seen.
+     */
+    public synchronized void clear() {
+        episodesPaths.clear();
+        createdPaths.clear();
+        showsNotFound.clear();
+    }
+    
+    private AliasedTVLibrary getLibrary(String show) {
+        String root = showIndex == null ? null : showIndex.getRoot(show);
+        if(root == null) {
+            return tvLibrary;
+        }
+        AliasedTVLibrary library = rootLibraries.get(root);
+        if(library == null) {
+            library = new AliasedTVLibrary(Collections.singletonList(root), aliasMap);
+            rootLibraries.put(root, library);
+        }
+        return library;
+    }
+    
+    private static String toShowKey(String show) {
+        return ShowIndex.normalize(show);
+    }
+    
+    private static String toKey(String show, int season) {
+        return toShowKey(show) + '/' + season;
+    }
+    
+}
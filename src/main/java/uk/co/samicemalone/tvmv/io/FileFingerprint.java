@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * FileFingerprint computes content hashes of episode files. A sampled
+ * fingerprint hashes the file size with fixed size blocks from the head,
+ * middle and tail of the file, so it costs three reads regardless of the file
+ * size. A full hash is only needed to confirm two sampled fingerprints match.
+ * @author Sam Malone
+ */
+public class FileFingerprint {
+    
+    public static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String ALGORITHM = "SHA-256";
+    
+    /**
+     * Get the sampled fingerprint of the given file. If the file is no larger
+     * than the sampled blocks, the whole file is hashed.
+     * @param file file to fingerprint
+     * @return sampled fingerprint as a hex string prefixed with the file size
+     * @throws IOException if unable to read the file
+     */
+    public static String sampled(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fc.size();
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+            if(size <= 3L * SAMPLE_SIZE) {
+                update(digest, fc, buffer, 0, size);
+            } else {
+                update(digest, fc, buffer, 0, SAMPLE_SIZE);
+                update(digest, fc, buffer, (size - SAMPLE_SIZE) / 2, SAMPLE_SIZE);
+                update(digest, fc, buffer, size - SAMPLE_SIZE, SAMPLE_SIZE);
+            }
+            return size + ":" + toHex(digest.digest());
+        }
+    }
+    
+    /**
+     * Get the hash of the whole file
+     * @param file file to hash
+     * @return hash as a hex string
+     * @throws IOException if unable to read the file
+     */
+    public static String full(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            update(digest, fc, ByteBuffer.allocate(BUFFER_SIZE), 0, fc.size());
+        }
+        return toHex(digest.digest());
+    }
+    
+    /**
+     * Check if the two files have identical contents. The file sizes are
+     * compared first, then the sampled fingerprints and then the full hashes
+     * only if the sampled fingerprint did not cover the whole file.
+     * @param a file
+     * @param b file
+     * @return true if the files are identical, false otherwise
+     * @throws IOException if unable to read either file
+     */
+    public static boolean isIdentical(Path a, Path b) throws IOException {
+        if(Files.isSameFile(a, b)) {
+            return true;
+        }
+        long size = Files.size(a);
+        if(size != Files.size(b) || !sampled(a).equals(sampled(b))) {
+            return false;
+        }
+        return size <= 3L * SAMPLE_SIZE || full(a).equals(full(b));
+    }
+    
+    private static void update(MessageDigest digest, FileChannel fc, ByteBuffer buffer, long position, long length) throws IOException {
+        long end = position + length;
+        while(position < end) {
+            buffer.clear();
+            if(end - position < buffer.capacity()) {
+                buffer.limit((int) (end - position));
+            }
+            int read = fc.read(buffer, position);
+            if(read < 0) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+    
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import uk.co.samicemalone.tvmv.OS;
+
+/**
+ * FingerprintIndex is a persistent index of the episodes filed by tvmv, keyed
+ * by their sampled {@link FileFingerprint}. It is used to find an episode that
+ * has already been filed under a different file name, so it isn't
+ * transferred again.
+ * <p>An indexed episode is only reported as filed if it still exists and its
+ * sampled fingerprint still matches. Stale entries are removed. A match is
+ * confirmed with the full hash of both files, in the same way as
+ * {@link FileFingerprint#isIdentical(java.nio.file.Path, java.nio.file.Path)},
+ * so files that only differ outside of the sampled blocks are not reported.
+ * @author Sam Malone
+ */
+public class FingerprintIndex {
+    
+    private static final String INDEX_FILE_NAME = "fingerprints.idx";
+    
+    /**
+     * Load the fingerprint index from the default config directory. If the
+     * index file does not exist or cannot be read, an empty index is returned.
+     * @return FingerprintIndex
+     */
+    public static FingerprintIndex load() {
+        return load(OS.getDefaultConfigDirectory().toPath().resolve(INDEX_FILE_NAME));
+    }
+    
+    /**
+     * Load the fingerprint index from the given file. If the index file does
+     * not exist or cannot be read, an empty index is returned.
+     * @param indexFile fingerprint index file
+     * @return FingerprintIndex
+     */
+    public static FingerprintIndex load(Path indexFile) {
+        FingerprintIndex index = new FingerprintIndex(indexFile);
+        if(Files.exists(indexFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if(tab > 0) {
+                        index.filed.put(line.substring(0, tab), Paths.get(line.substring(tab + 1)));
+                    }
+                }
+            } catch(IOException | RuntimeException e) {
+                index.filed.clear();
+            }
+        }
+        return index;
+    }
+    
+    private final Path indexFile;
+    private final Map<String, Path> filed;
+    private final Map<Path, String> sourceFingerprints;
+    private boolean isModified;
+
+    private FingerprintIndex(Path indexFile) {
+        this.indexFile = indexFile;
+        this.filed = new HashMap<>();
+        this.sourceFingerprints = new HashMap<>();
+    }
+    
+    /**
+     * Find an episode that has already been filed with the same contents as
+     * the given source file. The fingerprint of the source is remembered so
+     * it does not need to be read again by {@link #add(java.nio.file.Path, java.nio.file.Path)}
+     * @param source source episode file
+     * @return path of the filed episode or null if not found
+     * @throws IOException if unable to read the source file
+     */
+    public Path find(Path source) throws IOException {
+        String fingerprint = FileFingerprint.sampled(source);
+        Path filedPath;
+        synchronized(this) {
+            sourceFingerprints.put(source, fingerprint);
+            filedPath = filed.get(fingerprint);
+        }
+        if(filedPath == null || filedPath.equals(source)) {
+            return null;
+        }
+        String filedFingerprint = null;
+        try {
+            filedFingerprint = FileFingerprint.sampled(filedPath);
+        } catch(IOException e) {
+            
+        }
+        if(!fingerprint.equals(filedFingerprint)) {
+            remove(fingerprint, filedPath);
+            return null;
+        }
+        long size = Files.size(source);
+        if(size <= 3L * FileFingerprint.SAMPLE_SIZE) {
+            return filedPath;
+        }
+        String hash = FileFingerprint.full(source);
+        try {
+            if(hash.equals(FileFingerprint.full(filedPath))) {
+                return filedPath;
+            }
+        } catch(IOException e) {
+            
+        }
+        return null;
+    }
+    
+    /**
+     * Add the episode filed at the destination path from the source path
+     * @param source source episode file
+     * @param destination filed episode path
+     */
+    public void add(Path source, Path destination) {
+        String fingerprint;
+        synchronized(this) {
+            fingerprint = sourceFingerprints.remove(source);
+        }
+        try {
+            if(fingerprint == null) {
+                fingerprint = FileFingerprint.sampled(destination);
+            }
+        } catch(IOException e) {
+            return;
+        }
+        String path = destination.toAbsolutePath().toString();
+        if(path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+            return;
+        }
+        synchronized(this) {
+            filed.put(fingerprint, Paths.get(path));
+            isModified = true;
+        }
+    }
+    
+    /**
+     * Forget the fingerprints of the source files found during the previous
+     * run. The source files may have changed since, so they are read again.
+     */
+    public synchronized void reset() {
+        sourceFingerprints.clear();
+    }
+    
+    private synchronized void remove(String fingerprint, Path filedPath) {
+        if(filed.remove(fingerprint, filedPath)) {
+            isModified = true;
+        }
+    }
+    
+    /**
+     * Save the fingerprint index if it has been modified. Failing to save the
+     * index is not treated as an error.
+     */
+    public synchronized void save() {
+        if(!isModified) {
+            return;
+        }
+        try {
+            Files.createDirectories(indexFile.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+                for(Map.Entry<String, Path> entry : filed.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(entry.getValue().toString());
+                    writer.newLine();
+                }
+            }
+            isModified = false;
+        } catch(IOException e) {
+            
+        }
+    }
+    
+}
@@ -28,19 +28,32 @@
  */
 package uk.co.samicemalone.tvmv.io;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import uk.co.samicemalone.tvmv.DaemonThreadFactory;
 import uk.co.samicemalone.tvmv.Display;
+import uk.co.samicemalone.tvmv.OS;
 import uk.co.samicemalone.tvmv.exception.FileStillExistsException;
+import uk.co.samicemalone.tvmv.exception.TransferStalledException;
+import uk.co.samicemalone.tvmv.model.IOPriority;
 import uk.co.samicemalone.tvmv.model.IOProgress;
 
 /**
@@ -50,15 +63,39 @@ import uk.co.samicemalone.tvmv.model.IOProgress;
 public abstract class IOOperation {
     
     public enum Type {
-        COPY, MOVE
+        COPY, MOVE, LINK, REFLINK, SYMLINK
     }
     
     public static IOOperation fromType(Type type) {
-        return type == Type.COPY ? new CopyOperation() : new MoveOperation();
+        switch(type) {
+            case COPY:
+                return new CopyOperation();
+            case LINK:
+                return new LinkOperation();
+            case REFLINK:
+                return new ReflinkOperation();
+            case SYMLINK:
+                return new SymlinkOperation();
+            default:
+                return new MoveOperation();
+        }
+    }
+    
+    private static final long POLL_INTERVAL = 1000;
+    
+    private static volatile IOPriority ioPriority = IOPriority.NORMAL;
+    
+    /**
+     * Set the IO priority of transfers with a progress bar
+     * @param priority IO priority
+     */
+    public static void setIOPriority(IOPriority priority) {
+        ioPriority = priority;
     }
     
     protected Path source;
     protected Path destination;
+    private long stallTimeout;
     
     public abstract IOOperation startNative() throws IOException;
     
@@ -70,6 +107,15 @@ public abstract class IOOperation {
     
     public abstract IOOperation newInstance();
     
+    /**
+     * Check if this operation only creates filesystem metadata (e.g. a link)
+     * rather than transferring the file data, so there is no progress to display
+     * @return true if metadata only, false otherwise
+     */
+    public boolean isMetadataOnly() {
+        return false;
+    }
+    
     public void rollback() {
         try {
             rollbackOrThrow();
@@ -78,6 +124,33 @@ public abstract class IOOperation {
         }
     }
     
+    /**
+     * Set the time after which a transfer that has not written any data is
+     * aborted with a {@link TransferStalledException}
+     * @param stallTimeout stall timeout in milliseconds or 0 to never abort
+     * @return this
+     */
+    public IOOperation setStallTimeout(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+        return this;
+    }
+    
+    /**
+     * Start this operation natively or with progress. If a stall timeout is
+     * set, a native operation is run on a separate thread and is aborted if
+     * the destination file stops growing for longer than the stall timeout.
+     * @param isNative true to start natively, false to start with progress
+     * @return this
+     * @throws TransferStalledException if the transfer stalled
+     * @throws IOException if an IO error occurs
+     */
+    public IOOperation start(boolean isNative) throws IOException {
+        if(!isNative) {
+            return startProgress();
+        }
+        return stallTimeout > 0 ? startNativeWatched() : startNative();
+    }
+    
     public IOOperation setOperands(Path source, Path destination) {
         this.source = source;
         this.destination = destination;
@@ -93,19 +166,168 @@ public abstract class IOOperation {
     }
     
     protected void doIO(Path source, Path destination) throws IOException {
-        ExecutorService es = Executors.newFixedThreadPool(1);
+        ExecutorService es = Executors.newSingleThreadExecutor(new DaemonThreadFactory("tvmv-io"));
         BlockingQueue<IOProgress> bq = new LinkedBlockingQueue<>(100);
-        es.execute(new ThreadIOProgress(source, destination, bq));
+        AtomicLong bytesWritten = new AtomicLong();
+        AtomicBoolean isThrottled = new AtomicBoolean();
         try {
+            es.execute(new ThreadIOProgress(source, destination, bq, bytesWritten, isThrottled));
+            StallDetector detector = new StallDetector(stallTimeout);
             IOProgress p;
-            while(!(p = bq.take()).hasCompleted()) {
-                displayIOProgress(p);
+            while((p = bq.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null || !p.hasCompleted()) {
+                if(p != null) {
+                    displayIOProgress(p);
+                }
+                if(detector.isStalled(bytesWritten.get(), isThrottled.get()) && (p = stopStalled(es, bq)) != null) {
+                    break;
+                }
             }
             displayIOProgress(p);
         } catch (InterruptedException ex) {
             throw new IOException(ex);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+    
+    /**
+     * Run {@link #startNative()} on a separate thread while probing the size
+     * of the destination file. The size is probed on another thread so a
+     * destination that has stopped responding is detected as a stall.
+     */
+    private IOOperation startNativeWatched() throws IOException {
+        long sourceSize = source.toFile().length();
+        ExecutorService es = Executors.newFixedThreadPool(2, new DaemonThreadFactory("tvmv-native-io"));
+        try {
+            Future<IOOperation> op = es.submit(new Callable<IOOperation>() {
+                @Override
+                public IOOperation call() throws IOException {
+                    return startNative();
+                }
+            });
+            Callable<Long> sizeProbe = new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return destination.toFile().length();
+                }
+            };
+            StallDetector detector = new StallDetector(stallTimeout);
+            Future<Long> probe = null;
+            long size = 0;
+            while(true) {
+                try {
+                    return op.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if(probe == null || probe.isDone()) {
+                        if(probe != null) {
+                            size = probe.get();
+                        }
+                        probe = es.submit(sizeProbe);
+                    }
+                    if(detector.isStalled(size)) {
+                        return stopStalledNative(es, op, size < sourceSize);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("The transfer was interrupted");
+        } finally {
+            es.shutdownNow();
+        }
+    }
+    
+    /**
+     * Stop the worker of a stalled transfer with progress and wait for it to
+     * end. The worker deletes the partially written destination itself.
+     * @param es executor running the worker
+     * @param bq progress queue of the worker
+     * @return final progress if the transfer completed while being stopped
+     * @throws TransferStalledException if the transfer was stopped or could
+     * not be stopped within the stall timeout
+     */
+    private IOProgress stopStalled(ExecutorService es, BlockingQueue<IOProgress> bq) throws InterruptedException, TransferStalledException {
+        es.shutdownNow();
+        boolean isStopped = es.awaitTermination(stallTimeout, TimeUnit.MILLISECONDS);
+        if(isStopped) {
+            IOProgress last = null;
+            IOProgress p;
+            while((p = bq.poll()) != null) {
+                last = p;
+            }
+            if(last != null && last.hasCompleted()) {
+                return last;
+            }
+        }
+        Display.onIOStalled(false);
+        throw newStalledException(isStopped);
+    }
+    
+    /**
+     * Stop a stalled native operation and wait for it to end. Blocking file
+     * operations often ignore interrupts, so the destination is only discarded
+     * once the operation has failed. If the operation is still running after
+     * the stall timeout, it is left to complete or fail on its own.
+     * @param es executor running the operation
+     * @param op native operation
+     * @param isPartial true if the destination was last seen partially written
+     * @return this if the operation completed while being stopped
+     * @throws TransferStalledException if the operation was stopped or could
+     * not be stopped within the stall timeout
+     */
+    private IOOperation stopStalledNative(ExecutorService es, Future<IOOperation> op, boolean isPartial) throws InterruptedException, TransferStalledException {
+        es.shutdownNow();
+        try {
+            return op.get(stallTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Display.onIOStalled(true);
+            if(isPartial) {
+                discardDestination();
+            }
+            throw newStalledException(true);
+        } catch (TimeoutException e) {
+            Display.onIOStalled(true);
+            throw newStalledException(false);
         }
+    }
+    
+    /**
+     * Delete the partially written destination of a stalled transfer. The
+     * deletion is abandoned if it doesn't finish within the stall timeout.
+     * A destination that has been completely written is not discarded by the
+     * callers, as the source of a move may already have been deleted.
+     */
+    private void discardDestination() {
+        ExecutorService es = Executors.newSingleThreadExecutor(new DaemonThreadFactory("tvmv-rollback"));
+        Future<Void> f = es.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                Files.deleteIfExists(destination);
+                return null;
+            }
+        });
         es.shutdown();
+        try {
+            f.get(stallTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private TransferStalledException newStalledException(boolean isStopped) {
+        String message = String.format("The transfer of %s stalled: no data was written for %d seconds", source.getFileName(), stallTimeout / 1000);
+        if(!isStopped) {
+            message += " and it could not be stopped";
+        }
+        return new TransferStalledException(message, isStopped);
     }
     
     private void displayIOProgress(IOProgress p) throws IOException {
@@ -117,38 +339,63 @@ public abstract class IOOperation {
         Display.onIOProgress(p);
     }
     
+    /**
+     * ThreadIOProgress copies the source to the destination and reports the
+     * progress. The destination is sized up front so the filesystem can
+     * allocate it in one go, and the source is read sequentially in large
+     * page aligned blocks so the OS read ahead is effective and each write
+     * starts on a page boundary.
+     */
     private class ThreadIOProgress implements Runnable {
         
+        private static final int PAGE_SIZE = 4096;
+        private static final int BUFFER_SIZE = 256 * PAGE_SIZE;
+        private static final int LIMITED_CHUNK_SIZE = 16 * PAGE_SIZE;
+        
         private final Path source;
         private final Path destination;
         private final BlockingQueue<IOProgress> progress;
+        private final AtomicLong bytesWritten;
+        private final AtomicBoolean isThrottled;
 
-        public ThreadIOProgress(Path source, Path destination, BlockingQueue<IOProgress> progress) {
+        public ThreadIOProgress(Path source, Path destination, BlockingQueue<IOProgress> progress, AtomicLong bytesWritten, AtomicBoolean isThrottled) {
             this.source = source;
             this.destination = destination;
             this.progress = progress;
+            this.bytesWritten = bytesWritten;
+            this.isThrottled = isThrottled;
         }
 
         @Override
         public void run() {
+            applyIOPriority(ioPriority);
             long totalBytesWritten = 0;
             long size = 0;
-            try (InputStream bis = new BufferedInputStream(Files.newInputStream(source));
-                OutputStream bos = new BufferedOutputStream(Files.newOutputStream(destination))) {
-                byte[] buffer = new byte[8192];
+            boolean isOpen = false;
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                RandomAccessFile raf = new RandomAccessFile(destination.toFile(), "rw");
+                FileChannel out = raf.getChannel()) {
+                isOpen = true;
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE + PAGE_SIZE).alignedSlice(PAGE_SIZE);
                 int bytesRead;
-                size = Files.size(source);
+                RateLimiter limiter = BandwidthLimits.getLimiter(destination);
+                size = in.size();
+                raf.setLength(size);
                 long bytesPerChar = IOProgress.getBytesPerChar(size);
                 long nextCharBytes = bytesPerChar;
                 progress.offer(new IOProgress(0, size));
-                while((bytesRead = bis.read(buffer)) != -1) {
-                    bos.write(buffer, 0, bytesRead);
+                while((bytesRead = readBlock(in, buffer)) > 0) {
+                    writeBlock(out, buffer, limiter, totalBytesWritten);
                     totalBytesWritten += bytesRead;
                     if(totalBytesWritten >= nextCharBytes && totalBytesWritten != size) {
                         progress.offer(new IOProgress(totalBytesWritten, size));
-                        nextCharBytes += bytesPerChar;
+                        nextCharBytes = totalBytesWritten + bytesPerChar;
                     }
                 }
+                if(totalBytesWritten != size) {
+                    raf.setLength(totalBytesWritten);
+                    size = totalBytesWritten;
+                }
                 if(getType() == Type.MOVE) {
                     try {
                         Files.delete(source);
@@ -157,9 +404,154 @@ public abstract class IOOperation {
                     }
                 }
                 progress.offer(new IOProgress(size, size));
+            } catch (FileStillExistsException ex) {
+                progress.offer(new IOProgress(totalBytesWritten, size, ex));
             } catch (IOException ex) {
+                if(isOpen) {
+                    deletePartial();
+                }
                 progress.offer(new IOProgress(totalBytesWritten, size, ex));
+            } catch (InterruptedException ex) {
+                deletePartial();
+                progress.offer(new IOProgress(totalBytesWritten, size, new InterruptedIOException("The transfer was interrupted")));
+            }
+        }
+        
+        /**
+         * Lower the priority of the current thread. The thread priority only
+         * affects CPU scheduling so on Linux the IO scheduling class of the
+         * thread is also set with ionice. Failures are ignored as the
+         * transfer can still run at the normal priority.
+         * @param priority IO priority
+         */
+        private void applyIOPriority(IOPriority priority) {
+            if(priority == IOPriority.NORMAL) {
+                return;
+            }
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+            if(!OS.isUnix || OS.isWindows) {
+                return;
+            }
+            Process p = null;
+            try {
+                String tid = Files.readSymbolicLink(Paths.get("/proc/thread-self")).getFileName().toString();
+                ProcessBuilder pb = priority == IOPriority.IDLE ?
+                    new ProcessBuilder("ionice", "-c", "3", "-p", tid) :
+                    new ProcessBuilder("ionice", "-c", "2", "-n", "7", "-p", tid);
+                pb.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD);
+                p = pb.start();
+                p.waitFor();
+            } catch (IOException | UnsupportedOperationException e) {
+                
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if(p != null) {
+                    p.destroy();
+                }
+            }
+        }
+        
+        /**
+         * Delete the destination of a copy that failed part way. The
+         * destination is sized up front so it would otherwise be left at the
+         * full size with the unwritten remainder filled with zeros.
+         */
+        private void deletePartial() {
+            try {
+                Files.deleteIfExists(destination);
+            } catch (IOException e) {
+                
+            }
+        }
+        
+        /**
+         * Write the buffer to the channel. If the transfer is limited, the
+         * buffer is written in chunks so the limiter is only charged a chunk
+         * at a time. The time spent waiting for the limiter is marked as
+         * throttled so it isn't mistaken for a stall.
+         * @param out channel to write to
+         * @param buffer buffer to write
+         * @param limiter rate limiter or null if the transfer is not limited
+         * @param offset number of bytes written before this block
+         * @throws IOException if an IO error occurs
+         * @throws InterruptedException if interrupted while throttled
+         */
+        private void writeBlock(FileChannel out, ByteBuffer buffer, RateLimiter limiter, long offset) throws IOException, InterruptedException {
+            int end = buffer.limit();
+            while(buffer.position() < end) {
+                int chunkEnd = end;
+                if(limiter != null) {
+                    chunkEnd = Math.min(end, buffer.position() + LIMITED_CHUNK_SIZE);
+                    isThrottled.set(true);
+                    try {
+                        limiter.acquire(chunkEnd - buffer.position());
+                    } finally {
+                        isThrottled.set(false);
+                    }
+                }
+                buffer.limit(chunkEnd);
+                while(buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                bytesWritten.set(offset + buffer.position());
+            }
+        }
+        
+        /**
+         * Fill the buffer from the channel unless the end of the channel is
+         * reached first. The buffer is flipped ready to be written.
+         * @param in channel to read from
+         * @param buffer buffer to fill
+         * @return number of bytes read or 0 if at the end of the channel
+         * @throws IOException if an IO error occurs
+         */
+        private int readBlock(FileChannel in, ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            while(buffer.hasRemaining() && in.read(buffer) != -1) {
+                
+            }
+            buffer.flip();
+            return buffer.remaining();
+        }
+        
+    }
+    
+    /**
+     * StallDetector tracks a progress value, e.g. the number of bytes written,
+     * and reports a stall once the value has not changed for the timeout
+     */
+    private static class StallDetector {
+        
+        private final long timeout;
+        private long lastProgress = -1;
+        private long lastProgressTime;
+
+        public StallDetector(long timeout) {
+            this.timeout = timeout;
+            this.lastProgressTime = System.nanoTime();
+        }
+        
+        public boolean isStalled(long progress) {
+            return isStalled(progress, false);
+        }
+        
+        /**
+         * Check if the progress has stalled. While waiting, e.g. for a rate
+         * limiter, the progress is not expected to change so the timeout is
+         * restarted instead.
+         * @param progress progress value
+         * @param isWaiting true if the progress is deliberately paused
+         * @return true if stalled, false otherwise
+         */
+        public boolean isStalled(long progress, boolean isWaiting) {
+            long now = System.nanoTime();
+            if(isWaiting || progress != lastProgress) {
+                lastProgress = progress;
+                lastProgressTime = now;
+                return false;
             }
+            return timeout > 0 && TimeUnit.NANOSECONDS.toMillis(now - lastProgressTime) >= timeout;
         }
         
     }
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import uk.co.samicemalone.libtv.VideoFilter;
+import uk.co.samicemalone.tvmv.OS;
+
+/**
+ * LibraryInventory is a persistent record of the contents of each episodes
+ * directory that tvmv has listed. A record is only used if the last modified
+ * time of the directory has not changed since it was recorded, and each
+ * directory is checked at most once per run, so repeated listings and
+ * existence checks within the same directory are answered from memory.
+ * Changes made by tvmv are applied to the records as they happen.
+ * <p>Records are appended to a log file when saved. Once the log grows too
+ * large it is compacted into a snapshot file.
+ * @author Sam Malone
+ */
+public class LibraryInventory {
+    
+    private static final String SNAPSHOT_FILE_NAME = "inventory.snapshot";
+    private static final String LOG_FILE_NAME = "inventory.log";
+    private static final int MAX_LOG_RECORDS = 1000;
+    
+    /**
+     * Minimum age of a directory modification time before it can be trusted.
+     * A directory modified within this window of being listed could be
+     * modified again without its modification time changing.
+     */
+    private static final long MODIFIED_GRANULARITY = 2000;
+    private static final long UNTRUSTED = -1;
+    
+    /**
+     * Load the library inventory from the default config directory. If the
+     * inventory cannot be read, an empty inventory is returned.
+     * @return LibraryInventory
+     */
+    public static LibraryInventory load() {
+        return load(OS.getDefaultConfigDirectory().toPath());
+    }
+    
+    /**
+     * Load the library inventory from the given directory. If the inventory
+     * cannot be read, an empty inventory is returned.
+     * @param directory directory containing the inventory files
+     * @return LibraryInventory
+     */
+    public static LibraryInventory load(Path directory) {
+        LibraryInventory inventory = new LibraryInventory(directory);
+        inventory.readRecords(inventory.snapshotFile);
+        inventory.logRecords = inventory.readRecords(inventory.logFile);
+        return inventory;
+    }
+    
+    private static class DirectoryRecord {
+        
+        private long modified;
+        private long modifiedByTvmv;
+        private final Set<String> names;
+
+        public DirectoryRecord(long modified, Set<String> names) {
+            this.modified = modified;
+            this.names = names;
+        }
+        
+    }
+    
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final Map<Path, DirectoryRecord> records;
+    private final Set<Path> validated;
+    private final Set<Path> modified;
+    private final List<String> pendingLog;
+    private int logRecords;
+
+    private LibraryInventory(Path directory) {
+        snapshotFile = directory.resolve(SNAPSHOT_FILE_NAME);
+        logFile = directory.resolve(LOG_FILE_NAME);
+        records = new HashMap<>();
+        validated = new HashSet<>();
+        modified = new LinkedHashSet<>();
+        pendingLog = new ArrayList<>();
+    }
+    
+    /**
+     * List the episode files in the given directory
+     * @param dir episodes directory
+     * @return list of episode file paths
+     * @throws IOException if unable to list the directory
+     */
+    public synchronized List<Path> listEpisodes(Path dir) throws IOException {
+        DirectoryRecord r = getRecord(dir);
+        VideoFilter filter = new VideoFilter();
+        List<Path> episodes = new ArrayList<>(r.names.size());
+        for(String name : r.names) {
+            Path p = dir.resolve(name);
+            if(filter.accept(p)) {
+                episodes.add(p);
+            }
+        }
+        return episodes;
+    }
+    
+    /**
+     * Check if the given file exists
+     * @param file file path
+     * @return true if the file exists, false otherwise
+     * @throws IOException if unable to list the directory of the file
+     */
+    public synchronized boolean contains(Path file) throws IOException {
+        try {
+            return getRecord(file.getParent()).names.contains(file.getFileName().toString());
+        } catch(NoSuchFileException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Record that tvmv has added the given file
+     * @param file file path
+     */
+    public synchronized void onAdded(Path file) {
+        DirectoryRecord r = getValidatedRecord(file.getParent());
+        if(r != null) {
+            r.names.add(file.getFileName().toString());
+            r.modifiedByTvmv = getModifiedOrUntrusted(file.getParent());
+        }
+    }
+    
+    /**
+     * Record that tvmv has removed the given file
+     * @param file file path
+     */
+    public synchronized void onRemoved(Path file) {
+        DirectoryRecord r = getValidatedRecord(file.getParent());
+        if(r != null) {
+            r.names.remove(file.getFileName().toString());
+            r.modifiedByTvmv = getModifiedOrUntrusted(file.getParent());
+        }
+    }
+    
+    /**
+     * Start a new run. Each directory is checked against its modification
+     * time again the next time it is used, so changes made outside of tvmv
+     * since the last run are seen when the inventory is kept across runs.
+     */
+    public synchronized void reset() {
+        validated.clear();
+    }
+    
+    /**
+     * Save the changes to the inventory. A modified record is only saved if
+     * the directory has not been modified since tvmv last changed it,
+     * otherwise the record is dropped so the directory is listed again.
+     * Failing to save the inventory is not treated as an error.
+     */
+    public synchronized void save() {
+        for(Path dir : modified) {
+            DirectoryRecord r = records.get(dir);
+            long dirModified = getModifiedOrUntrusted(dir);
+            if(dirModified != UNTRUSTED && dirModified == r.modifiedByTvmv) {
+                r.modified = toTrustedModified(dirModified);
+                logRecord(dir, r);
+            } else {
+                records.remove(dir);
+                validated.remove(dir);
+                logRecord(dir, new DirectoryRecord(UNTRUSTED, new HashSet<String>()));
+            }
+        }
+        modified.clear();
+        if(pendingLog.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(logFile.getParent());
+            if(logRecords + pendingLog.size() > MAX_LOG_RECORDS) {
+                compact();
+            } else {
+                try (BufferedWriter writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for(String line : pendingLog) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                }
+                logRecords += pendingLog.size();
+            }
+            pendingLog.clear();
+        } catch(IOException e) {
+            
+        }
+    }
+    
+    private void compact() throws IOException {
+        Path tmpSnapshot = snapshotFile.resolveSibling(SNAPSHOT_FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpSnapshot, StandardCharsets.UTF_8)) {
+            for(Map.Entry<Path, DirectoryRecord> entry : records.entrySet()) {
+                String line = toLine(entry.getKey(), entry.getValue());
+                if(line != null) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(tmpSnapshot, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(logFile);
+        logRecords = 0;
+    }
+    
+    /**
+     * Get the record for the given directory. The record is validated against
+     * the modification time of the directory the first time it is used in this
+     * run, and the directory is listed again if it has changed.
+     * @param dir directory
+     * @return directory record
+     * @throws IOException if unable to list the directory
+     */
+    private DirectoryRecord getRecord(Path dir) throws IOException {
+        Path key = dir.toAbsolutePath().normalize();
+        DirectoryRecord r = records.get(key);
+        if(validated.contains(key)) {
+            return r;
+        }
+        long dirModified = Files.getLastModifiedTime(key).toMillis();
+        if(r == null || r.modified == UNTRUSTED || r.modified != dirModified) {
+            Set<String> names = new HashSet<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(key)) {
+                for(Path p : stream) {
+                    names.add(p.getFileName().toString());
+                }
+            }
+            r = new DirectoryRecord(toTrustedModified(dirModified), names);
+            records.put(key, r);
+            logRecord(key, r);
+        }
+        validated.add(key);
+        return r;
+    }
+    
+    private DirectoryRecord getValidatedRecord(Path dir) {
+        Path key = dir.toAbsolutePath().normalize();
+        if(!validated.contains(key)) {
+            return null;
+        }
+        modified.add(key);
+        return records.get(key);
+    }
+    
+    private static long getModifiedOrUntrusted(Path dir) {
+        try {
+            return Files.getLastModifiedTime(dir).toMillis();
+        } catch(IOException e) {
+            return UNTRUSTED;
+        }
+    }
+    
+    private static long toTrustedModified(long dirModified) {
+        return System.currentTimeMillis() - dirModified >= MODIFIED_GRANULARITY ? dirModified : UNTRUSTED;
+    }
+    
+    private void logRecord(Path dir, DirectoryRecord r) {
+        String line = toLine(dir, r);
+        if(line != null) {
+            pendingLog.add(line);
+        }
+    }
+    
+    /**
+     * Read the directory records from the given file
+     * @param file file to read
+     * @return number of records read
+     */
+    private int readRecords(Path file) {
+        int count = 0;
+        if(!Files.exists(file)) {
+            return count;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if(fields.length < 2) {
+                    continue;
+                }
+                Set<String> names = new HashSet<>(fields.length - 2);
+                for(int i = 2; i < fields.length; i++) {
+                    names.add(fields[i]);
+                }
+                records.put(Paths.get(fields[0]), new DirectoryRecord(Long.parseLong(fields[1]), names));
+                count++;
+            }
+        } catch(IOException | RuntimeException e) {
+            
+        }
+        return count;
+    }
+    
+    /**
+     * Convert the directory record to a tab separated line
+     * @param dir directory
+     * @param r directory record
+     * @return line or null if a name cannot be stored in a line
+     */
+    private static String toLine(Path dir, DirectoryRecord r) {
+        StringBuilder line = new StringBuilder(dir.toString()).append('\t').append(r.modified);
+        if(!isStorable(dir.toString())) {
+            return null;
+        }
+        for(String name : r.names) {
+            if(!isStorable(name)) {
+                return null;
+            }
+            line.append('\t').append(name);
+        }
+        return line.toString();
+    }
+    
+    private static boolean isStorable(String s) {
+        return s.indexOf('\t') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0;
+    }
+    
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uk.co.samicemalone.tvmv.OS;
+
+/**
+ * MatchCache is a small persistent cache of the input files that could not be
+ * matched as an episode. Files are identified by their file name, size and
+ * last modified time so a file that has been replaced or modified will be
+ * matched again. The least recently used entries are evicted once the cache
+ * is full.
+ * @author Sam Malone
+ */
+public class MatchCache {
+    
+    private static final String CACHE_FILE_NAME = "match.cache";
+    private static final int MAX_ENTRIES = 5000;
+    
+    /**
+     * Load the match cache from the default config directory. If the cache
+     * file does not exist or cannot be read, an empty cache is returned.
+     * @return MatchCache
+     */
+    public static MatchCache load() {
+        return load(OS.getDefaultConfigDirectory().toPath().resolve(CACHE_FILE_NAME));
+    }
+    
+    /**
+     * Load the match cache from the given file. If the cache file does not
+     * exist or cannot be read, an empty cache is returned.
+     * @param cacheFile match cache file
+     * @return MatchCache
+     */
+    public static MatchCache load(Path cacheFile) {
+        MatchCache cache = new MatchCache(cacheFile);
+        if(Files.exists(cacheFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    if(!line.isEmpty()) {
+                        cache.rejected.put(line, Boolean.TRUE);
+                    }
+                }
+            } catch(IOException e) {
+                cache.rejected.clear();
+            }
+        }
+        return cache;
+    }
+    
+    private final Path cacheFile;
+    private final Map<String, Boolean> rejected;
+    private boolean isModified;
+
+    private MatchCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        this.rejected = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+    
+    /**
+     * Check if the given file has previously been rejected when matching the
+     * given element
+     * @param path input file path
+     * @param element name of the element being matched e.g. ALL
+     * @return true if the file was previously rejected, false otherwise
+     */
+    public synchronized boolean isRejected(Path path, String element) {
+        String key = toKey(path, element);
+        return key != null && rejected.containsKey(key);
+    }
+    
+    /**
+     * Record that the given file could not be matched for the given element
+     * @param path input file path
+     * @param element name of the element being matched e.g. ALL
+     */
+    public synchronized void addRejected(Path path, String element) {
+        String key = toKey(path, element);
+        if(key != null && rejected.put(key, Boolean.TRUE) == null) {
+            isModified = true;
+        }
+    }
+    
+    /**
+     * Save the match cache if it has been modified. The cache is written to a
+     * temporary file first so an interrupted save never leaves a truncated
+     * cache. Failing to save the cache is not treated as an error.
+     */
+    public synchronized void save() {
+        if(!isModified) {
+            return;
+        }
+        Path tmpFile = null;
+        try {
+            Path cacheDir = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(cacheDir);
+            tmpFile = Files.createTempFile(cacheDir, CACHE_FILE_NAME, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                for(String key : rejected.keySet()) {
+                    writer.write(key);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            isModified = false;
+        } catch(IOException | RuntimeException e) {
+            if(tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch(IOException ex) {
+                    
+                }
+            }
+        }
+    }
+    
+    private static String toKey(Path path, String element) {
+        String name = path.getFileName().toString();
+        if(name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+            return element + '\t' + attr.size() + '\t' + attr.lastModifiedTime().toMillis() + '\t' + name;
+        } catch(IOException e) {
+            return null;
+        }
+    }
+    
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimiter is a token bucket used to limit the number of bytes per second
+ * transferred by any number of threads. The bucket holds at most one second
+ * of tokens. The rate can be changed while transfers are in progress.
+ * @author Sam Malone
+ */
+public class RateLimiter {
+    
+    private static final double NANOS_PER_SECOND = 1e9;
+    
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Create a new RateLimiter
+     * @param bytesPerSecond maximum bytes per second or 0 for unlimited
+     */
+    public RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+    
+    /**
+     * Get the rate of this limiter
+     * @return maximum bytes per second or 0 if unlimited
+     */
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+    
+    /**
+     * Set the rate of this limiter
+     * @param bytesPerSecond maximum bytes per second or 0 for unlimited
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        refill();
+        this.bytesPerSecond = bytesPerSecond;
+        tokens = Math.min(tokens, bytesPerSecond);
+    }
+    
+    /**
+     * Take the given number of bytes from the bucket, blocking until the
+     * bytes would be available if the bucket does not hold enough
+     * @param bytes number of bytes about to be transferred
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos;
+        synchronized(this) {
+            if(bytesPerSecond <= 0) {
+                return;
+            }
+            refill();
+            tokens -= bytes;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+        }
+        if(waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+    
+    private void refill() {
+        long now = System.nanoTime();
+        if(bytesPerSecond > 0) {
+            tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / NANOS_PER_SECOND);
+        }
+        lastRefill = now;
+    }
+    
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import uk.co.samicemalone.tvmv.DaemonThreadFactory;
+import uk.co.samicemalone.tvmv.OS;
+
+/**
+ * Reclaimer deletes the temporary files of replaced episodes on a background
+ * thread so the next replacement does not have to wait for them. Each path is
+ * recorded in a journal before it is queued, so deletions that are still
+ * pending when tvmv exits are resumed the next time a Reclaimer is started.
+ * Paths that cannot be deleted are kept in the journal and reported by
+ * {@link #finish()} rather than thrown. The journal is only changed while
+ * holding a lock on it, so processes sharing the journal keep each other's
+ * pending deletions.
+ * @author Sam Malone
+ */
+public class Reclaimer {
+    
+    private static final String JOURNAL_FILE_NAME = "pending.deletions";
+    private static final int QUEUE_SIZE = 256;
+    private static final Path END = Paths.get("");
+    private static final Object JOURNAL_LOCK = new Object();
+    private static final long OFFER_TIMEOUT = 1000;
+    
+    /**
+     * Start a Reclaimer using the journal in the default config directory
+     * @return started Reclaimer
+     */
+    public static Reclaimer start() {
+        return start(OS.getDefaultConfigDirectory().toPath().resolve(JOURNAL_FILE_NAME));
+    }
+    
+    /**
+     * Start a Reclaimer using the given journal. Any deletions pending in the
+     * journal are queued first.
+     * @param journal journal file path
+     * @return started Reclaimer
+     */
+    public static Reclaimer start(Path journal) {
+        Reclaimer r = new Reclaimer(journal);
+        r.worker.start();
+        List<Path> pending = r.updateJournal(Collections.<Path>emptyList(), Collections.<Path>emptyList());
+        r.journaled.addAll(pending);
+        for(Path p : pending) {
+            r.enqueue(p);
+        }
+        return r;
+    }
+    
+    private final Path journal;
+    private final BlockingQueue<Path> queue;
+    private final List<Path> failed;
+    private final Set<Path> journaled;
+    private final Thread worker;
+
+    private Reclaimer(Path journal) {
+        this.journal = journal;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        this.failed = Collections.synchronizedList(new ArrayList<Path>());
+        this.journaled = Collections.synchronizedSet(new LinkedHashSet<Path>());
+        this.worker = new DaemonThreadFactory("tvmv-reclaimer").newThread(new Runnable() {
+            @Override
+            public void run() {
+                reclaimQueued();
+            }
+        });
+    }
+    
+    /**
+     * Queue the given paths to be deleted. This blocks if the queue is full.
+     * @param paths paths to delete
+     */
+    public void reclaim(Collection<Path> paths) {
+        updateJournal(paths, Collections.<Path>emptyList());
+        journaled.addAll(paths);
+        for(Path p : paths) {
+            enqueue(p);
+        }
+    }
+    
+    /**
+     * Wait for the queued paths to be deleted and remove the deleted paths
+     * from the journal. The paths that could not be deleted and any paths
+     * journaled by other processes remain pending.
+     * @return list of paths that could not be deleted
+     */
+    public List<Path> finish() {
+        enqueue(END);
+        boolean interrupted = false;
+        while(worker.isAlive()) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Path p;
+        while((p = queue.poll()) != null) {
+            if(p != END) {
+                failed.add(p);
+            }
+        }
+        Set<Path> deleted;
+        synchronized(journaled) {
+            deleted = new LinkedHashSet<>(journaled);
+        }
+        deleted.removeAll(failed);
+        updateJournal(Collections.<Path>emptyList(), deleted);
+        return failed;
+    }
+    
+    /**
+     * Queue the path to be deleted. This blocks while the queue is full. If
+     * the worker has stopped, the path is recorded as failed so it stays in
+     * the journal.
+     */
+    private void enqueue(Path p) {
+        boolean interrupted = false;
+        while(true) {
+            try {
+                if(queue.offer(p, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            if(!worker.isAlive()) {
+                if(p != END) {
+                    failed.add(p);
+                }
+                break;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void reclaimQueued() {
+        try {
+            Path p;
+            while((p = queue.take()) != END) {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    failed.add(p);
+                }
+            }
+        } catch (InterruptedException e) {
+            
+        }
+    }
+    
+    /**
+     * Add and remove paths from the journal while holding a lock on it
+     * @param added paths to add to the journal
+     * @param removed paths to remove from the journal
+     * @return paths that were pending in the journal before it was updated
+     */
+    private List<Path> updateJournal(Collection<Path> added, Collection<Path> removed) {
+        List<Path> pending = new ArrayList<>();
+        synchronized(JOURNAL_LOCK) {
+            try {
+                Files.createDirectories(journal.getParent());
+                try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    channel.lock();
+                    Set<String> lines = readLines(channel);
+                    for(String line : lines) {
+                        pending.add(Paths.get(line));
+                    }
+                    boolean isChanged = lines.removeAll(toLines(removed));
+                    isChanged |= lines.addAll(toLines(added));
+                    if(isChanged) {
+                        writeLines(channel, lines);
+                    }
+                }
+            } catch (IOException e) {
+                
+            }
+        }
+        return pending;
+    }
+    
+    private static Set<String> readLines(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        Set<String> lines = new LinkedHashSet<>();
+        for(String line : new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).split("\\R")) {
+            if(!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+    
+    private static void writeLines(FileChannel channel, Collection<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for(String line : lines) {
+            sb.append(line).append(System.lineSeparator());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        channel.truncate(0);
+        channel.position(0);
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static List<String> toLines(Collection<Path> paths) {
+        List<String> lines = new ArrayList<>(paths.size());
+        for(Path p : paths) {
+            lines.add(p.toAbsolutePath().toString());
+        }
+        return lines;
+    }
+    
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import uk.co.samicemalone.tvmv.OS;
+
+/**
+ * ReflinkOperation creates a copy-on-write clone of the source file at the
+ * destination, which shares the data blocks of the source until either file
+ * is modified. This requires a filesystem that supports reflinks such as
+ * btrfs, XFS or APFS. The clone is made by the system cp command because
+ * Java has no API for it. If the clone fails, a copy is made instead.
+ * @author Sam Malone
+ */
+public class ReflinkOperation extends CopyOperation {
+    
+    @Override
+    public IOOperation startNative() throws IOException {
+        return reflink() ? this : super.startNative();
+    }
+
+    @Override
+    public IOOperation startProgress() throws IOException {
+        return reflink() ? this : super.startProgress();
+    }
+    
+    private boolean reflink() throws IOException {
+        if(Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(destination.toString());
+        }
+        ProcessBuilder pb;
+        if(OS.isMac) {
+            pb = new ProcessBuilder("cp", "-c", "--", source.toString(), destination.toString());
+        } else if(OS.isUnix) {
+            pb = new ProcessBuilder("cp", "--reflink=always", "--", source.toString(), destination.toString());
+        } else {
+            return false;
+        }
+        pb.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        boolean isCloned = false;
+        Process p = null;
+        try {
+            p = pb.start();
+            isCloned = p.waitFor() == 0;
+        } catch(IOException e) {
+            
+        } catch(InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            if(p != null) {
+                p.destroy();
+            }
+            if(!isCloned) {
+                Files.deleteIfExists(destination);
+            }
+        }
+        return isCloned;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.REFLINK;
+    }
+
+    @Override
+    public IOOperation newInstance() {
+        return new ReflinkOperation();
+    }
+
+}
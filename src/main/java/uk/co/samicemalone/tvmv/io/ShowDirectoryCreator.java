@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import uk.co.samicemalone.tvmv.DaemonThreadFactory;
+
+/**
+ * ShowDirectoryCreator creates the show directories that are missing from a
+ * directory. The directory is listed once and compared with the show names in
+ * memory, rather than checking each show for existence, and the missing
+ * directories are created concurrently.
+ * @author Sam Malone
+ */
+public class ShowDirectoryCreator {
+    
+    private static final int THREADS = 8;
+    
+    private final Path directory;
+    private final ShowIndex showIndex;
+    private final List<Path> created;
+    private final List<Path> failed;
+    private int existingCount;
+    private IOException firstFailure;
+
+    /**
+     * Create a new ShowDirectoryCreator
+     * @param directory directory to create the show directories in
+     * @param showIndex index to add the created show directories to or null
+     */
+    public ShowDirectoryCreator(Path directory, ShowIndex showIndex) {
+        this.directory = directory;
+        this.showIndex = showIndex;
+        this.created = new ArrayList<>();
+        this.failed = new ArrayList<>();
+    }
+    
+    /**
+     * Create a directory for each of the show names that doesn't already exist
+     * @param showNames show names
+     * @return this
+     * @throws InterruptedIOException if interrupted while creating the show
+     * directories
+     * @throws IOException if unable to list the directory
+     */
+    public ShowDirectoryCreator create(Collection<String> showNames) throws IOException {
+        Set<String> existing = listDirectoryNames();
+        Set<String> missing = new LinkedHashSet<>();
+        for(String showName : showNames) {
+            if(existing.contains(showName)) {
+                existingCount++;
+            } else if(!missing.add(showName)) {
+                existingCount++;
+            }
+        }
+        if(missing.isEmpty()) {
+            return this;
+        }
+        List<Path> toCreate = new ArrayList<>(missing.size());
+        List<Callable<Boolean>> tasks = new ArrayList<>(missing.size());
+        for(String showName : missing) {
+            final Path showDir = directory.resolve(showName);
+            toCreate.add(showDir);
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    try {
+                        Files.createDirectory(showDir);
+                        return true;
+                    } catch(FileAlreadyExistsException e) {
+                        return false;
+                    }
+                }
+            });
+        }
+        if(Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Creating the show directories was interrupted");
+        }
+        ExecutorService es = Executors.newFixedThreadPool(Math.min(THREADS, tasks.size()), new DaemonThreadFactory("tvmv-create-shows"));
+        try {
+            List<Future<Boolean>> results = es.invokeAll(tasks);
+            for(int i = 0; i < results.size(); i++) {
+                onResult(toCreate.get(i), results.get(i));
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Creating the show directories was interrupted");
+        } finally {
+            es.shutdownNow();
+        }
+        return this;
+    }
+    
+    private void onResult(Path showDir, Future<Boolean> result) throws InterruptedException {
+        try {
+            if(result.get()) {
+                created.add(showDir);
+                if(showIndex != null) {
+                    showIndex.addShowDirectory(showDir);
+                }
+            } else {
+                existingCount++;
+            }
+        } catch(ExecutionException e) {
+            failed.add(showDir);
+            if(firstFailure == null) {
+                firstFailure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+    
+    private Set<String> listDirectoryNames() throws IOException {
+        Set<String> names = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(Path p : stream) {
+                names.add(p.getFileName().toString());
+            }
+        } catch(DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        return names;
+    }
+
+    /**
+     * Get the show directories that were created
+     * @return list of created show directories
+     */
+    public List<Path> getCreated() {
+        return created;
+    }
+
+    /**
+     * Get the show directories that could not be created
+     * @return list of failed show directories
+     */
+    public List<Path> getFailed() {
+        return failed;
+    }
+
+    /**
+     * Get the number of shows that already had a directory
+     * @return number of existing show directories
+     */
+    public int getExistingCount() {
+        return existingCount;
+    }
+
+    /**
+     * Throw the first error that occurred when creating the show directories
+     * @throws IOException if a show directory could not be created
+     */
+    public void throwIfFailed() throws IOException {
+        if(firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+    
+}
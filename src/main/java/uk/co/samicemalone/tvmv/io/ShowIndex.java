@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import uk.co.samicemalone.tvmv.Display;
+
+/**
+ * ShowIndex is an in-memory, case insensitive index of the show directories
+ * in each TV destination root. Each root is listed once when the index is
+ * built so a show (or an alias of a show) can be resolved to its directory
+ * with a hash lookup instead of probing every root. Only the directories of
+ * a root are indexed.
+ * @author Sam Malone
+ */
+public class ShowIndex {
+    
+    /**
+     * Normalize a show name or alias for use as an index key
+     * @param show show name or alias
+     * @return normalized show name
+     */
+    public static String normalize(String show) {
+        return show.trim().toLowerCase(Locale.ENGLISH);
+    }
+    
+    private final Map<String, Map<String, Path>> rootShows;
+    private final Map<String, String> aliases;
+
+    /**
+     * Create a new empty ShowIndex for the TV destination roots given. Roots
+     * earlier in the list take precedence when a show exists in more than
+     * one root.
+     * @param roots TV destination root paths
+     */
+    public ShowIndex(List<String> roots) {
+        rootShows = new LinkedHashMap<>();
+        aliases = new HashMap<>();
+        for(String root : roots) {
+            rootShows.put(root, new HashMap<String, Path>());
+        }
+    }
+    
+    /**
+     * Build the index by listing each TV destination root
+     * @return same instance
+     */
+    public ShowIndex build() {
+        for(String root : rootShows.keySet()) {
+            refresh(root);
+        }
+        return this;
+    }
+    
+    /**
+     * Create a new ShowIndex for the TV destination roots given. The shows
+     * already indexed for a root are reused, so only new roots are listed.
+     * Aliases are not copied.
+     * @param roots TV destination root paths
+     * @return new ShowIndex
+     */
+    public synchronized ShowIndex reload(List<String> roots) {
+        ShowIndex index = new ShowIndex(roots);
+        for(String root : roots) {
+            Map<String, Path> shows = rootShows.get(root);
+            if(shows == null) {
+                index.refresh(root);
+            } else {
+                index.rootShows.put(root, new HashMap<>(shows));
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Re-list the given TV destination root, replacing the shows previously
+     * indexed for it. If the root cannot be listed, a notice is displayed and
+     * the shows previously indexed for it (if any) are kept.
+     * @param root TV destination root path
+     */
+    public synchronized void refresh(String root) {
+        Map<String, Path> shows = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(root))) {
+            for(Path showDir : stream) {
+                if(Files.isDirectory(showDir)) {
+                    shows.putIfAbsent(normalize(showDir.getFileName().toString()), showDir);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            Map<String, Path> previous = rootShows.get(root);
+            boolean isPreviousKept = previous != null && !previous.isEmpty();
+            Display.onShowIndexFailed(root, isPreviousKept);
+            if(isPreviousKept) {
+                return;
+            }
+        }
+        rootShows.put(root, shows);
+    }
+    
+    /**
+     * Add a newly created show directory to the index. The directory is only
+     * indexed if its parent is one of the TV destination roots.
+     * @param showDir show directory
+     */
+    public synchronized void addShowDirectory(Path showDir) {
+        Path parent = showDir.getParent();
+        for(Map.Entry<String, Map<String, Path>> entry : rootShows.entrySet()) {
+            if(Paths.get(entry.getKey()).equals(parent)) {
+                entry.getValue().putIfAbsent(normalize(showDir.getFileName().toString()), showDir);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Add a show alias to the index
+     * @param alias show alias
+     * @param show show directory name the alias maps to
+     */
+    public synchronized void addAlias(String alias, String show) {
+        aliases.put(normalize(alias), show);
+    }
+    
+    /**
+     * Get the show directory for the given show name or alias
+     * @param show show name or alias
+     * @return show directory or null if not found in any root
+     */
+    public synchronized Path getShowDirectory(String show) {
+        String key = toIndexedKey(show);
+        String root = findRoot(key);
+        return root == null ? null : rootShows.get(root).get(key);
+    }
+    
+    /**
+     * Get the TV destination root containing the given show name or alias
+     * @param show show name or alias
+     * @return TV destination root or null if not found in any root
+     */
+    public synchronized String getRoot(String show) {
+        return findRoot(toIndexedKey(show));
+    }
+    
+    private String toIndexedKey(String show) {
+        String key = normalize(show);
+        String aliasedShow = aliases.get(key);
+        if(aliasedShow != null && findRoot(normalize(aliasedShow)) != null) {
+            return normalize(aliasedShow);
+        }
+        return key;
+    }
+    
+    private String findRoot(String key) {
+        for(Map.Entry<String, Map<String, Path>> entry : rootShows.entrySet()) {
+            if(entry.getValue().containsKey(key)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+    
+}
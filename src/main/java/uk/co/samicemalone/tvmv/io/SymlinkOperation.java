@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ *
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * SymlinkOperation leaves the source file in place and creates a symbolic
+ * link to it at the destination. Only the link is created so there is no
+ * progress to display, and rolling back deletes the link.
+ * @author Sam Malone
+ */
+public class SymlinkOperation extends IOOperation {
+    
+    @Override
+    public IOOperation startNative() throws IOException {
+        Files.createSymbolicLink(destination, source.toAbsolutePath().normalize());
+        return this;
+    }
+
+    @Override
+    public IOOperation startProgress() throws IOException {
+        return startNative();
+    }
+
+    @Override
+    public void rollbackOrThrow() throws IOException {
+        Files.delete(destination);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.SYMLINK;
+    }
+
+    @Override
+    public boolean isMetadataOnly() {
+        return true;
+    }
+
+    @Override
+    public IOOperation newInstance() {
+        return new SymlinkOperation();
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uk.co.samicemalone.tvmv.OS;
+import uk.co.samicemalone.tvmv.model.WindowsLibrary;
+
+/**
+ * WindowsLibraryCache is a persistent cache of parsed Windows Libraries. Each
+ * library is stored with the last modified time of its .library-ms file, so a
+ * library is parsed again once the file has been modified.
+ * <p>Each line of the cache file is tab separated: the .library-ms path, the
+ * last modified time, the default save index and the directory locations.
+ * @author Sam Malone
+ */
+public class WindowsLibraryCache {
+    
+    private static final String CACHE_FILE_NAME = "libraries.cache";
+    
+    /**
+     * Load the library cache from the default config directory. If the cache
+     * file does not exist or cannot be read, an empty cache is returned.
+     * @return WindowsLibraryCache
+     */
+    public static WindowsLibraryCache load() {
+        return load(OS.getDefaultConfigDirectory().toPath().resolve(CACHE_FILE_NAME));
+    }
+    
+    /**
+     * Load the library cache from the given file. If the cache file does not
+     * exist or cannot be read, an empty cache is returned.
+     * @param cacheFile library cache file
+     * @return WindowsLibraryCache
+     */
+    public static WindowsLibraryCache load(Path cacheFile) {
+        WindowsLibraryCache cache = new WindowsLibraryCache(cacheFile);
+        if(Files.exists(cacheFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    cache.readEntry(line.split("\t"));
+                }
+            } catch(IOException | RuntimeException e) {
+                cache.entries.clear();
+            }
+        }
+        return cache;
+    }
+    
+    private final Path cacheFile;
+    private final Map<String, Entry> entries;
+    private boolean isModified;
+
+    private WindowsLibraryCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        this.entries = new LinkedHashMap<>();
+    }
+    
+    private void readEntry(String[] fields) {
+        if(fields.length < 3) {
+            return;
+        }
+        WindowsLibrary library = new WindowsLibrary();
+        for(int i = 3; i < fields.length; i++) {
+            library.addDirectoryLocation(fields[i]);
+        }
+        library.setDefaultSaveIndex(Integer.parseInt(fields[2]));
+        entries.put(fields[0], new Entry(Long.parseLong(fields[1]), library));
+    }
+    
+    /**
+     * Get the cached library for the given .library-ms file
+     * @param libraryFile .library-ms file path
+     * @param modified last modified time of the .library-ms file in millis
+     * @return cached library or null if not cached or the file has been
+     * modified since it was cached
+     */
+    public synchronized WindowsLibrary get(Path libraryFile, long modified) {
+        Entry entry = entries.get(libraryFile.toAbsolutePath().toString());
+        return entry != null && entry.modified == modified ? entry.library : null;
+    }
+    
+    /**
+     * Cache the library parsed from the given .library-ms file
+     * @param libraryFile .library-ms file path
+     * @param modified last modified time of the .library-ms file in millis
+     * @param library parsed library
+     */
+    public synchronized void put(Path libraryFile, long modified, WindowsLibrary library) {
+        entries.put(libraryFile.toAbsolutePath().toString(), new Entry(modified, library));
+        isModified = true;
+    }
+    
+    /**
+     * Save the library cache if it has been modified. The cache is written to
+     * a temporary file first so an interrupted save never leaves a truncated
+     * cache. Failing to save the cache is not treated as an error.
+     */
+    public synchronized void save() {
+        if(!isModified) {
+            return;
+        }
+        Path tmpFile = null;
+        try {
+            Path cacheDir = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(cacheDir);
+            tmpFile = Files.createTempFile(cacheDir, CACHE_FILE_NAME, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                for(Map.Entry<String, Entry> e : entries.entrySet()) {
+                    WindowsLibrary library = e.getValue().library;
+                    writer.write(e.getKey() + '\t' + e.getValue().modified + '\t' + library.getDefaultSaveIndex());
+                    for(String location : library.getLocations()) {
+                        writer.write('\t' + location);
+                    }
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            isModified = false;
+        } catch(IOException | RuntimeException e) {
+            if(tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch(IOException ex) {
+                    
+                }
+            }
+        }
+    }
+    
+    private static class Entry {
+        
+        private final long modified;
+        private final WindowsLibrary library;
+
+        public Entry(long modified, WindowsLibrary library) {
+            this.modified = modified;
+            this.library = library;
+        }
+        
+    }
+    
+}
@@ -49,18 +49,72 @@ import uk.co.samicemalone.tvmv.model.WindowsLibrary;
  */
 public class WindowsLibraryParser extends DefaultHandler {
     
+    private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+    
     /**
-     * Parse a Windows Library to get a list of absolute paths to the directories that make up the library
+     * Parse a Windows Library to get a list of absolute paths to the directories that make up the library.
+     * The library is read from the default library cache if its .library-ms file has not been modified.
      * @param libraryName Windows Library Name or "?" to detect TV library (see {@link #findTVLibraryPath()})
      * @return WindowsLibrary containing list of paths of the directories in the given library, or an empty
      * list if the library is empty or does not exist
      */
     public static WindowsLibrary parse(String libraryName) {
-        Path libraryPath = "?".equals(libraryName) ? findTVLibraryPath() : getLibraryPath(libraryName);
-        if(libraryPath == null) {
-            return new WindowsLibrary();
+        Path librariesDir = Paths.get(System.getenv("APPDATA"), "Microsoft\\Windows\\Libraries");
+        WindowsLibraryCache cache = WindowsLibraryCache.load();
+        WindowsLibrary library = parse(librariesDir, libraryName, cache);
+        cache.save();
+        return library;
+    }
+    
+    /**
+     * Parse the named Windows Library in the libraries directory given. If
+     * the name is "?", the TV library is tried first, then the Television
+     * library.
+     * @param librariesDir directory containing the .library-ms files
+     * @param libraryName Windows Library Name or "?" to detect TV library
+     * @param cache library cache
+     * @return WindowsLibrary of the first library that could be parsed, or an
+     * empty library if none could be parsed
+     */
+    static WindowsLibrary parse(Path librariesDir, String libraryName, WindowsLibraryCache cache) {
+        String[] names = "?".equals(libraryName) ? new String[] { "TV", "Television" } : new String[] { libraryName };
+        for(String name : names) {
+            WindowsLibrary library = parse(librariesDir.resolve(name + ".library-ms"), cache);
+            if(library != null) {
+                return library;
+            }
+        }
+        return new WindowsLibrary();
+    }
+    
+    /**
+     * Parse a Windows Library using the library cache given. The .library-ms
+     * file is only parsed if it isn't cached or it has been modified since
+     * it was cached. Only a library that was parsed successfully and is not
+     * empty is cached.
+     * @param msLibraryPath Path to the .library-ms file
+     * @param cache library cache
+     * @return WindowsLibrary containing list of paths of the directories in the given library, or null if
+     * the .library-ms file does not exist or could not be parsed
+     */
+    public static WindowsLibrary parse(Path msLibraryPath, WindowsLibraryCache cache) {
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(msLibraryPath).toMillis();
+        } catch(IOException e) {
+            return null;
         }
-        return parse(libraryPath.toFile());
+        WindowsLibrary library = cache.get(msLibraryPath, modified);
+        if(library == null) {
+            library = parseOrNull(msLibraryPath.toFile());
+            if(library == null) {
+                return null;
+            }
+            if(!library.getLocations().isEmpty()) {
+                cache.put(msLibraryPath, modified, library);
+            }
+        }
+        return library;
     }
     
     /**
@@ -70,12 +124,25 @@ public class WindowsLibraryParser extends DefaultHandler {
      * list if the library is empty or does not exist
      */
     public static WindowsLibrary parse(File msLibraryPath) {
+        WindowsLibrary library = parseOrNull(msLibraryPath);
+        return library == null ? new WindowsLibrary() : library;
+    }
+    
+    /**
+     * Parse a Windows Library to get a list of absolute paths to the directories that make up the library
+     * @param msLibraryPath Path to the .library-ms file
+     * @return WindowsLibrary or null if the .library-ms file could not be parsed
+     */
+    private static WindowsLibrary parseOrNull(File msLibraryPath) {
         WindowsLibraryParser lp = new WindowsLibraryParser();
         try {
-            SAXParser sax = SAXParserFactory.newInstance().newSAXParser();
+            SAXParser sax;
+            synchronized(SAX_PARSER_FACTORY) {
+                sax = SAX_PARSER_FACTORY.newSAXParser();
+            }
             sax.parse(msLibraryPath, lp);
         } catch(SAXException | ParserConfigurationException | IOException ex) {
-            
+            return null;
         }
         return lp.getWindowsLibrary();
     }
@@ -86,7 +153,7 @@ public class WindowsLibraryParser extends DefaultHandler {
      * @return true if os supported, false otherwise
      */
     public static boolean isOSSupported() {
-        return OS.OS.matches("windows (7|8|10|11)");
+        return OS.isWindowsLibrarySupported();
     }
     
     /**
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io.reader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * AliasIndex is a compiled binary copy of an aliases.txt file, stored next to
+ * it as aliases.idx. The index records the size and modification time of the
+ * aliases file it was compiled from, and is only used if they still match.
+ * Reading the index avoids parsing every line of a large aliases file.
+ * @author Sam Malone
+ */
+public class AliasIndex {
+    
+    public static final String INDEX_FILE_NAME = "aliases.idx";
+    
+    private static final int MAGIC = 0x54564149; // TVAI
+    private static final int VERSION = 1;
+    
+    /**
+     * Get the path of the index for the aliases file given
+     * @param aliasFile aliases file
+     * @return alias index path
+     */
+    public static Path getIndexPath(Path aliasFile) {
+        return aliasFile.resolveSibling(INDEX_FILE_NAME);
+    }
+    
+    /**
+     * Read the aliases from the index of the aliases file given, if the index
+     * is up to date
+     * @param aliasFile aliases file
+     * @param reader AliasReader to add each alias to
+     * @return true if the aliases were read from the index, false if the index
+     * doesn't exist, is out of date or cannot be read. The reader is only
+     * given aliases if the whole index was read.
+     */
+    public static boolean read(Path aliasFile, AliasReader reader) {
+        Path indexFile = getIndexPath(aliasFile);
+        if(!Files.exists(indexFile)) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attr = Files.readAttributes(aliasFile, BasicFileAttributes.class);
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            if(in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return false;
+            }
+            if(in.getLong() != attr.size() || in.getLong() != attr.lastModifiedTime().toMillis()) {
+                return false;
+            }
+            String[] aliases = new String[in.getInt() * 2];
+            byte[] bytes = in.array();
+            for(int i = 0; i < aliases.length; i++) {
+                int length = in.getInt();
+                aliases[i] = new String(bytes, in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+            for(int i = 0; i < aliases.length; i += 2) {
+                reader.onReadAlias(aliases[i], aliases[i + 1]);
+            }
+            return true;
+        } catch(IOException | RuntimeException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Write the index of the aliases file given. Failing to write the index is
+     * not treated as an error. The index is written to a unique temporary
+     * file and moved into place so concurrent writers never interleave.
+     * @param aliasFile aliases file the aliases were read from
+     * @param attr attributes of the aliases file before it was read
+     * @param aliases list of alternating alias and show names
+     */
+    public static void write(Path aliasFile, BasicFileAttributes attr, List<String> aliases) {
+        Path indexFile = getIndexPath(aliasFile);
+        Path tmpFile = null;
+        try {
+            tmpFile = Files.createTempFile(indexFile.toAbsolutePath().getParent(), INDEX_FILE_NAME, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(attr.size());
+                out.writeLong(attr.lastModifiedTime().toMillis());
+                out.writeInt(aliases.size() / 2);
+                for(String s : aliases) {
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException | RuntimeException e) {
+            if(tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch(IOException ex) {
+                    
+                }
+            }
+        }
+    }
+    
+}
@@ -34,15 +34,22 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import uk.co.samicemalone.libtv.model.AliasMap;
 import uk.co.samicemalone.tvmv.OS;
 import uk.co.samicemalone.tvmv.exception.OSNotSupportedException;
+import uk.co.samicemalone.tvmv.io.ShowIndex;
 
 /**
  *
  * @author Sam Malone
  */
 public class AliasReader extends KeyValueReader {
+    
+    private static final String ALIAS_FILE_NAME = "aliases.txt";
 
     /**
      * Reads the aliases.txt file from the current directory. If this is not found,
@@ -54,17 +61,40 @@ public class AliasReader extends KeyValueReader {
      * @throws OSNotSupportedException if os not supported
      */
     public static AliasMap read(AliasMap aliasMap) throws IOException {
-        AliasReader r = new AliasReader(aliasMap);
+        return read(aliasMap, null);
+    }
+    
+    /**
+     * Reads the aliases.txt file as per {@link #read(uk.co.samicemalone.libtv.model.AliasMap)}
+     * and also adds each alias to the show index given. The aliases are read
+     * from the {@link AliasIndex} if it is up to date, otherwise the index is
+     * rebuilt.
+     * @param aliasMap AliasMap to read aliases into
+     * @param showIndex ShowIndex to add aliases to or null
+     * @return AliasMap containing the shows and their aliases
+     * @throws IOException if unable to read the file
+     * @throws OSNotSupportedException if os not supported
+     */
+    public static AliasMap read(AliasMap aliasMap, ShowIndex showIndex) throws IOException {
+        AliasReader r = new AliasReader(aliasMap, showIndex);
         try {
-            r.readFile(getAliasFilePath());
+            r.readIndexed(getAliasFilePath());
         } catch (FileNotFoundException ex) {
             
         }
         return r.getAliasMap();
     }
     
+    /**
+     * Get the paths that are checked for the aliases.txt file, in order
+     * @return aliases file paths
+     */
+    public static List<Path> getAliasFileCandidates() {
+        return Arrays.asList(Paths.get(".", ALIAS_FILE_NAME), OS.getDefaultConfigDirectory().toPath().resolve(ALIAS_FILE_NAME));
+    }
+    
     private static Path getAliasFilePath() throws FileNotFoundException {
-        String aliasFileName = "aliases.txt";
+        String aliasFileName = ALIAS_FILE_NAME;
         Path p = Paths.get(".", aliasFileName);
         if(Files.exists(p)) {
             return p;
@@ -77,19 +107,57 @@ public class AliasReader extends KeyValueReader {
     }
     
     private final AliasMap aliasMap;
+    private final ShowIndex showIndex;
+    private List<String> compiled;
 
     public AliasReader(AliasMap aliasMap) {
+        this(aliasMap, null);
+    }
+
+    public AliasReader(AliasMap aliasMap, ShowIndex showIndex) {
         this.aliasMap = aliasMap;
+        this.showIndex = showIndex;
     }
 
     public AliasMap getAliasMap() {
         return aliasMap;
     }
     
+    /**
+     * Read the aliases from the index of the aliases file given if it is up
+     * to date. Otherwise the aliases file is read and the index is rebuilt.
+     * @param aliasFile aliases file
+     * @throws IOException if unable to read the aliases file
+     */
+    public void readIndexed(Path aliasFile) throws IOException {
+        if(AliasIndex.read(aliasFile, this)) {
+            return;
+        }
+        BasicFileAttributes attr = Files.readAttributes(aliasFile, BasicFileAttributes.class);
+        compiled = new ArrayList<>();
+        try {
+            readFile(aliasFile);
+            AliasIndex.write(aliasFile, attr, compiled);
+        } finally {
+            compiled = null;
+        }
+    }
+    
     @Override
     protected boolean onReadKeyValue(String key, String value) {
-        aliasMap.addAlias(key, value);
+        if(compiled != null) {
+            compiled.add(key);
+            compiled.add(value);
+        }
+        onReadAlias(key, value);
         return true;
     }
     
+    void onReadAlias(String alias, String show) {
+        aliasMap.addAlias(alias, show);
+        if(showIndex != null) {
+            showIndex.addAlias(alias, show);
+        }
+    }
+    
 }
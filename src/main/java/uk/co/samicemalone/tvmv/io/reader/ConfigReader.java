@@ -34,9 +34,14 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 import uk.co.samicemalone.tvmv.OS;
 import uk.co.samicemalone.tvmv.exception.OSNotSupportedException;
+import uk.co.samicemalone.tvmv.io.BandwidthLimits;
 import uk.co.samicemalone.tvmv.model.Config;
+import uk.co.samicemalone.tvmv.model.ConflictPolicy;
+import uk.co.samicemalone.tvmv.model.IOPriority;
+import uk.co.samicemalone.tvmv.model.Source;
 
 /**
  * 
@@ -57,12 +62,23 @@ public class ConfigReader extends KeyValueReader {
      */
     public static Config read(String filePath) throws IOException {
         ConfigReader r = new ConfigReader();
+        r.readFile(findConfigFile(filePath));
+        return r.getConfig();
+    }
+    
+    /**
+     * Find the config file that {@link #read(java.lang.String)} would read
+     * @param filePath Config file path or null
+     * @return config file path
+     * @throws FileNotFoundException if the config cannot be found
+     * @throws OSNotSupportedException if the OS is not supported
+     */
+    public static Path findConfigFile(String filePath) throws FileNotFoundException {
         Path p = filePath == null ? getConfigFilePath() : Paths.get(filePath);
         if(filePath != null && !Files.exists(p)) {
             throw new FileNotFoundException("Config file not found: " + filePath);
         }
-        r.readFile(p);
-        return r.getConfig();
+        return p;
     }
     
     private static Path getConfigFilePath() throws FileNotFoundException {
@@ -88,7 +104,7 @@ public class ConfigReader extends KeyValueReader {
     protected boolean onReadKeyValue(String key, String value) {
         switch(key) {
             case "SOURCE":
-                config.setSource(value);
+                addSource(value);
                 break;
             case "DESTINATION":
                 config.addDestinationPath(value);
@@ -102,9 +118,82 @@ public class ConfigReader extends KeyValueReader {
             case "CREATE_SHOWS_DEST":
                 config.setCreateDestShowDir(value);
                 break;
+            case "BANDWIDTH_LIMIT":
+                addBandwidthLimit(value);
+                break;
+            case "DESTINATION_TIMEOUT":
+                config.setDestinationTimeout(parsePositiveInt(value, Config.DEFAULT_DESTINATION_TIMEOUT));
+                break;
+            case "STALL_TIMEOUT":
+                config.setStallTimeout("0".equals(value) ? 0 : parsePositiveInt(value, Config.DEFAULT_STALL_TIMEOUT));
+                break;
+            case "CONFLICT_POLICY":
+                setConflictPolicy(value);
+                break;
+            case "IO_PRIORITY":
+                setIOPriority(value);
+                break;
         }
         return true;
     }
+    
+    /**
+     * Add a source in the format {@code <PATH>[|<PRIORITY>[|<CONCURRENCY>]]}.
+     * Invalid numbers are replaced with their default values.
+     * @param value source config value
+     */
+    private void addSource(String value) {
+        String[] parts = value.split("\\|", -1);
+        int priority = Source.DEFAULT_PRIORITY;
+        if(parts.length > 1) {
+            try {
+                priority = Integer.parseInt(parts[1].trim());
+            } catch(NumberFormatException e) {
+                
+            }
+        }
+        int concurrency = parts.length > 2 ? parsePositiveInt(parts[2].trim(), Source.DEFAULT_CONCURRENCY) : Source.DEFAULT_CONCURRENCY;
+        config.addSource(new Source(parts[0].trim(), priority, concurrency));
+    }
+    
+    /**
+     * Add a bandwidth limit in the format {@code <RATE> [<DESTINATION>]}
+     * @param value bandwidth limit config value
+     */
+    private void addBandwidthLimit(String value) {
+        String[] parts = value.split("\\s+", 2);
+        try {
+            long rate = BandwidthLimits.parseRate(parts[0]);
+            config.addBandwidthLimit(parts.length == 2 ? parts[1] : null, rate);
+        } catch(NumberFormatException e) {
+            
+        }
+    }
+    
+    private void setConflictPolicy(String value) {
+        try {
+            config.setConflictPolicy(ConflictPolicy.valueOf(value.toUpperCase(Locale.ENGLISH)));
+        } catch(IllegalArgumentException e) {
+            
+        }
+    }
+    
+    private void setIOPriority(String value) {
+        try {
+            config.setIOPriority(IOPriority.valueOf(value.toUpperCase(Locale.ENGLISH)));
+        } catch(IllegalArgumentException e) {
+            
+        }
+    }
+    
+    private static int parsePositiveInt(String value, int defaultValue) {
+        try {
+            int i = Integer.parseInt(value);
+            return i > 0 ? i : defaultValue;
+        } catch(NumberFormatException e) {
+            return defaultValue;
+        }
+    }
 
     public Config getConfig() {
         return config;
@@ -29,6 +29,7 @@
 
 package uk.co.samicemalone.tvmv.io.reader;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -41,14 +42,18 @@ import java.nio.file.Path;
 public abstract class FileLineReader {
 
     /**
-     * Read the lines of filePath as UTF8 text
+     * Read the lines of filePath as UTF8 text. The lines are streamed, so the
+     * file is never held in memory.
      * @param path file path to read
      * @throws IOException if unable to read the file
      */
     public void readFile(Path path) throws IOException {
-        for(String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
-            if(!onReadLine(line)) {
-                break;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(!onReadLine(line)) {
+                    break;
+                }
             }
         }
     }
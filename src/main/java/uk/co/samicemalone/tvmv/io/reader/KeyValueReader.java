@@ -37,12 +37,12 @@ public abstract class KeyValueReader extends ConfigLineReader {
 
     @Override
     protected boolean onConfigLine(String line) {
-        String[] kvPair = line.split("=", 2);
-        if(kvPair.length != 2) {
+        int separator = line.indexOf('=');
+        if(separator < 0) {
             return true; // skip
         }
-        String key = kvPair[0].trim();
-        String value = kvPair[1].trim();
+        String key = line.substring(0, separator).trim();
+        String value = line.substring(separator + 1).trim();
         return !key.isEmpty() && !value.isEmpty() ? onReadKeyValue(key, value) : true;
     }
     
@@ -30,7 +30,9 @@
 package uk.co.samicemalone.tvmv.model;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -38,22 +40,40 @@ import java.util.List;
  */
 public class Config {
     
+    public static final int DEFAULT_DESTINATION_TIMEOUT = 10;
+    public static final int DEFAULT_STALL_TIMEOUT = 60;
+    
     private final List<String> destinations;
-    private String source;
+    private final Map<String, Long> bandwidthLimits;
+    private final List<Source> sources;
     private String windowsLibrary;
     private String createShowsFile;
     private String createDestShowDir;
+    private int destinationTimeout = DEFAULT_DESTINATION_TIMEOUT;
+    private int stallTimeout = DEFAULT_STALL_TIMEOUT;
+    private ConflictPolicy conflictPolicy = ConflictPolicy.ABORT;
+    private IOPriority ioPriority = IOPriority.NORMAL;
 
     public Config() {
         destinations = new ArrayList<>();
+        bandwidthLimits = new LinkedHashMap<>();
+        sources = new ArrayList<>();
     }
 
     public void addDestinationPath(String destination) {
         destinations.add(destination);
     }
 
-    public String getSource() {
-        return source;
+    public void addSource(Source source) {
+        sources.add(source);
+    }
+
+    /**
+     * Get the source directories in the order they were added
+     * @return list of sources, empty if none set
+     */
+    public List<Source> getSources() {
+        return sources;
     }
 
     public List<String> getDestinationPaths() {
@@ -64,10 +84,6 @@ public class Config {
         return windowsLibrary;
     }
 
-    public void setSource(String source) {
-        this.source = source;
-    }
-
     public void setWindowsLibrary(String windowsLibrary) {
         this.windowsLibrary = windowsLibrary;
     }
@@ -87,5 +103,73 @@ public class Config {
     public void setCreateDestShowDir(String createDestShowDir) {
         this.createDestShowDir = createDestShowDir;
     }
+
+    /**
+     * Get the number of seconds to wait for the TV destinations to respond
+     * @return destination timeout in seconds
+     */
+    public int getDestinationTimeout() {
+        return destinationTimeout;
+    }
+
+    public void setDestinationTimeout(int destinationTimeout) {
+        this.destinationTimeout = destinationTimeout;
+    }
+
+    /**
+     * Get the number of seconds a transfer can go without writing any data
+     * before it is aborted
+     * @return stall timeout in seconds or 0 to never abort
+     */
+    public int getStallTimeout() {
+        return stallTimeout;
+    }
+
+    public void setStallTimeout(int stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+
+    /**
+     * Get the IO priority of transfers with a progress bar
+     * @return IO priority
+     */
+    public IOPriority getIOPriority() {
+        return ioPriority;
+    }
+
+    public void setIOPriority(IOPriority ioPriority) {
+        this.ioPriority = ioPriority;
+    }
+
+    /**
+     * Get the policy for destination files that already exist with different
+     * contents to the source file
+     * @return conflict policy
+     */
+    public ConflictPolicy getConflictPolicy() {
+        return conflictPolicy;
+    }
+
+    public void setConflictPolicy(ConflictPolicy conflictPolicy) {
+        this.conflictPolicy = conflictPolicy;
+    }
+
+    /**
+     * Get the bandwidth limits in bytes per second, keyed by TV destination.
+     * The default limit for every other destination has a null key.
+     * @return bandwidth limits
+     */
+    public Map<String, Long> getBandwidthLimits() {
+        return bandwidthLimits;
+    }
+
+    /**
+     * Add a bandwidth limit
+     * @param destination TV destination or null for the default limit
+     * @param bytesPerSecond maximum bytes per second or 0 for unlimited
+     */
+    public void addBandwidthLimit(String destination, long bytesPerSecond) {
+        bandwidthLimits.put(destination, bytesPerSecond);
+    }
     
 }
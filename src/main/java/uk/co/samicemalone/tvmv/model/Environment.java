@@ -35,11 +35,23 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.StringUtils;
 import uk.co.samicemalone.libtv.VideoFilter;
 import uk.co.samicemalone.libtv.util.PathUtil;
 import uk.co.samicemalone.tvmv.Args;
+import uk.co.samicemalone.tvmv.DaemonThreadFactory;
+import uk.co.samicemalone.tvmv.Display;
 import uk.co.samicemalone.tvmv.OS;
 import uk.co.samicemalone.tvmv.exception.OSNotSupportedException;
 import uk.co.samicemalone.tvmv.io.WindowsLibraryParser;
@@ -53,7 +65,9 @@ public class Environment {
     private final Args args;
     private final Config config;
     private final List<String> sourcePaths;
+    private final Map<Source, List<String>> sourceFiles;
     private final List<String> tvDestinationPaths;
+    private final List<String> degradedDestinationPaths;
 
     private String createShowsFile;
     private String createDestShowsDir;
@@ -69,7 +83,26 @@ public class Environment {
         this.args = args;
         this.config = config;
         sourcePaths = new ArrayList<>();
+        sourceFiles = new LinkedHashMap<>();
         tvDestinationPaths = new ArrayList<>();
+        degradedDestinationPaths = new ArrayList<>();
+    }
+
+    /**
+     * Create a new Environment instance for the arguments given that shares
+     * the config and TV destinations of an initialised environment
+     * @param args program arguments
+     * @param env initialised environment
+     */
+    private Environment(Args args, Environment env) {
+        this.args = args;
+        this.config = env.config;
+        sourcePaths = new ArrayList<>();
+        sourceFiles = new LinkedHashMap<>();
+        tvDestinationPaths = env.tvDestinationPaths;
+        degradedDestinationPaths = env.degradedDestinationPaths;
+        createShowsFile = env.createShowsFile;
+        createDestShowsDir = env.createDestShowsDir;
     }
 
     /**
@@ -77,37 +110,119 @@ public class Environment {
      * @return same instance
      * @throws FileNotFoundException if no input files or SOURCE config variable given.
      * Or if no TV destination found via DESTINATION or DESTINATION_LIBRARY variables.
+     * TV destinations that do not respond within the destination timeout are
+     * skipped (see {@link #getDegradedDestinationPaths()}).
      * @throws IOException if invalid input file formats are given as arguments
      */
     public Environment initialise() throws IOException {
         if(!OS.isSupported()) {
             throw new OSNotSupportedException("Your operating system is not currently supported");
         }
-        if(args.getInputFiles().isEmpty() && config.getSource() == null) {
+        initialiseSourcePaths();
+        return initialiseDestinations();
+    }
+
+    /**
+     * Create a new initialised Environment for the arguments given. The config
+     * and TV destinations of this environment are reused, so only the input
+     * files are validated.
+     * @param args program arguments
+     * @return new Environment
+     * @throws FileNotFoundException if no input files or SOURCE config variable given.
+     * @throws IOException if invalid input file formats are given as arguments
+     */
+    public Environment forArgs(Args args) throws IOException {
+        Environment env = new Environment(args, this);
+        env.initialiseSourcePaths();
+        return env;
+    }
+
+    private void initialiseSourcePaths() throws IOException {
+        if(args.getInputFiles().isEmpty() && config.getSources().isEmpty()) {
             throw new FileNotFoundException("There were no input files given or the SOURCE was not set in the config file.\nUse the --help flag for usage.");
         } else if(!args.getInputFiles().isEmpty()) {
             VideoFilter filter = new VideoFilter(true);
             for(String source : args.getInputFiles()) {
                 sourcePaths.add(validatePath(filter, source).toString());
             }
-        } else if(config.getSource() != null) {
-            VideoFilter filter = new VideoFilter();
-            for(Path path : PathUtil.listPaths(Paths.get(toFormattedPath(config.getSource())), filter)) {
-                sourcePaths.add(path.toString());
+            sourceFiles.put(Source.INPUT_FILES, sourcePaths);
+        } else {
+            addSourceFiles(config.getSources());
+        }
+    }
+
+    /**
+     * List each of the source directories concurrently and add the episode
+     * files found, ordered by the source priority from highest to lowest.
+     * Sources with the same priority keep the order given.
+     * @param sources sources to list
+     * @throws IOException if unable to list a source directory
+     */
+    private void addSourceFiles(List<Source> sources) throws IOException {
+        List<Source> ordered = new ArrayList<>(sources);
+        Collections.sort(ordered, new Comparator<Source>() {
+            @Override
+            public int compare(Source s1, Source s2) {
+                return Integer.compare(s2.getPriority(), s1.getPriority());
+            }
+        });
+        List<Callable<List<Path>>> listings = new ArrayList<>(ordered.size());
+        for(final Source source : ordered) {
+            listings.add(new Callable<List<Path>>() {
+                @Override
+                public List<Path> call() throws IOException {
+                    return PathUtil.listPaths(Paths.get(toFormattedPath(source.getPath())), new VideoFilter());
+                }
+            });
+        }
+        ExecutorService es = Executors.newFixedThreadPool(ordered.size(), new DaemonThreadFactory("tvmv-scan"));
+        try {
+            List<Future<List<Path>>> results = es.invokeAll(listings);
+            for(int i = 0; i < results.size(); i++) {
+                List<String> files = new ArrayList<>();
+                for(Path path : results.get(i).get()) {
+                    files.add(path.toString());
+                }
+                sourcePaths.addAll(files);
+                sourceFiles.put(ordered.get(i), files);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
             }
+            throw new IOException(ex.getCause());
+        } finally {
+            es.shutdownNow();
         }
-        if(WindowsLibraryParser.isOSSupported() && config.getWindowsLibrary() != null) {
+    }
+
+    /**
+     * Initialise the TV destinations and the create shows config without
+     * validating the input files
+     * @return same instance
+     * @throws FileNotFoundException if no TV destination found via DESTINATION
+     * or DESTINATION_LIBRARY variables.
+     */
+    public Environment initialiseDestinations() throws FileNotFoundException {
+        if(!OS.isSupported()) {
+            throw new OSNotSupportedException("Your operating system is not currently supported");
+        }
+        List<Path> destPaths = new ArrayList<>();
+        if(config.getWindowsLibrary() != null && OS.isWindowsLibrarySupported()) {
             WindowsLibrary lib = WindowsLibraryParser.parse(config.getWindowsLibrary());
             for(String path : lib.getLocations()) {
-                addDestPathIfExists(Paths.get(path));
+                destPaths.add(Paths.get(path));
             }
             if(!lib.isEmpty() && "?".equals(config.getCreateDestShowDir())) {
                 createDestShowsDir = lib.getDefaultSaveLocation();
             }
         }
         for(String path : config.getDestinationPaths()) {
-            addDestPathIfExists(Paths.get(path));
+            destPaths.add(Paths.get(path));
         }
+        addDestPathsIfExist(destPaths);
         if(tvDestinationPaths.isEmpty()) {
             throw new FileNotFoundException("No TV destination paths found.\nEnsure the DESTINATION (or DESTINATION_LIBRARY in Windows 7+) is set in tvmv.conf");
         }
@@ -133,10 +248,29 @@ public class Environment {
         return sourcePaths;
     }
 
+    /**
+     * Get the input files of each source, ordered by the source priority from
+     * highest to lowest. Input files given as arguments belong to
+     * {@link Source#INPUT_FILES}.
+     * @return map of source to input file paths
+     */
+    public Map<Source, List<String>> getSourceFiles() {
+        return sourceFiles;
+    }
+
     public List<String> getTvDestinationPaths() {
         return tvDestinationPaths;
     }
 
+    /**
+     * Get the TV destination paths that could not be reached within the
+     * destination timeout and have been skipped
+     * @return list of degraded TV destination paths
+     */
+    public List<String> getDegradedDestinationPaths() {
+        return degradedDestinationPaths;
+    }
+
     public String getCreateShowsFile() {
         return createShowsFile;
     }
@@ -145,9 +279,49 @@ public class Environment {
         return createDestShowsDir;
     }
 
-    private void addDestPathIfExists(Path p) {
-        if(Files.exists(p)) {
-            tvDestinationPaths.add(p.toString());
+    /**
+     * Probe each of the TV destination paths concurrently and add the paths
+     * that exist, in the order given. Paths that have not been probed within
+     * the destination timeout are marked as degraded and skipped.
+     * @param paths TV destination paths to probe
+     */
+    private void addDestPathsIfExist(List<Path> paths) {
+        if(paths.isEmpty()) {
+            return;
+        }
+        List<Callable<Boolean>> probes = new ArrayList<>(paths.size());
+        for(final Path p : paths) {
+            probes.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Files.exists(p);
+                }
+            });
+        }
+        ExecutorService es = Executors.newFixedThreadPool(paths.size(), new DaemonThreadFactory("tvmv-probe"));
+        try {
+            List<Future<Boolean>> results = es.invokeAll(probes, config.getDestinationTimeout(), TimeUnit.SECONDS);
+            for(int i = 0; i < results.size(); i++) {
+                Future<Boolean> result = results.get(i);
+                if(result.isCancelled()) {
+                    degradedDestinationPaths.add(paths.get(i).toString());
+                    Display.onDegradedDestination(paths.get(i));
+                } else if(isProbeSuccessful(result)) {
+                    tvDestinationPaths.add(paths.get(i).toString());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    private static boolean isProbeSuccessful(Future<Boolean> probe) throws InterruptedException {
+        try {
+            return probe.get();
+        } catch (ExecutionException ex) {
+            return false;
         }
     }
 
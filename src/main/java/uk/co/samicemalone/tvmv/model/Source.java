@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.model;
+
+/**
+ * A Source is a directory of episodes to import when no input files are
+ * given. Episodes from a source with a higher priority are transferred before
+ * episodes from a source with a lower priority. The concurrency is the number
+ * of episodes from the source that are prepared for transfer at once.
+ * @author Sam Malone
+ */
+public class Source {
+    
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final int DEFAULT_CONCURRENCY = 1;
+    
+    /**
+     * Source of the input files given as program arguments
+     */
+    public static final Source INPUT_FILES = new Source(null);
+    
+    private final String path;
+    private final int priority;
+    private final int concurrency;
+
+    public Source(String path) {
+        this(path, DEFAULT_PRIORITY, DEFAULT_CONCURRENCY);
+    }
+
+    public Source(String path, int priority, int concurrency) {
+        this.path = path;
+        this.priority = priority;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Get the source directory path
+     * @return source directory path or null for {@link #INPUT_FILES}
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+    
+}
@@ -46,6 +46,10 @@ public class WindowsLibrary {
         locations = new ArrayList<>();
     }
 
+    public int getDefaultSaveIndex() {
+        return defaultSaveIndex;
+    }
+
     public void setDefaultSaveIndex(int defaultSaveIndex) {
         this.defaultSaveIndex = defaultSaveIndex;
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.server;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import uk.co.samicemalone.tvmv.DaemonThreadFactory;
+
+/**
+ * ConfigWatcher watches a set of files for changes and runs a callback once
+ * the changes have settled. Editors often write a file more than once when
+ * saving, so events are collected until no more have arrived for
+ * {@link #SETTLE_TIME} milliseconds.
+ * @author Sam Malone
+ */
+public class ConfigWatcher implements Runnable {
+    
+    private static final long SETTLE_TIME = 500;
+    
+    private final Set<Path> files;
+    private final Runnable onChange;
+    private WatchService watchService;
+
+    /**
+     * Create a new ConfigWatcher
+     * @param files files to watch. The files don't have to exist.
+     * @param onChange callback to run when one or more of the files have been
+     * created, modified or deleted
+     */
+    public ConfigWatcher(List<Path> files, Runnable onChange) {
+        this.files = new HashSet<>();
+        for(Path file : files) {
+            this.files.add(file.toAbsolutePath().normalize());
+        }
+        this.onChange = onChange;
+    }
+    
+    /**
+     * Start watching the files on a daemon thread
+     * @return this
+     * @throws IOException if unable to watch the directories of the files
+     */
+    public ConfigWatcher start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> dirs = new HashSet<>();
+        for(Path file : files) {
+            Path dir = file.getParent();
+            if(dir != null && Files.isDirectory(dir) && dirs.add(dir)) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+        new DaemonThreadFactory("tvmv-config-watcher").newThread(this).start();
+        return this;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while(true) {
+                if(isWatchedFileChanged(watchService.take())) {
+                    WatchKey key;
+                    while((key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null) {
+                        isWatchedFileChanged(key);
+                    }
+                    onChange.run();
+                }
+            }
+        } catch(InterruptedException e) {
+            
+        }
+    }
+    
+    private boolean isWatchedFileChanged(WatchKey key) {
+        boolean isChanged = false;
+        Path dir = (Path) key.watchable();
+        for(WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                isChanged = true;
+            } else if(files.contains(dir.resolve((Path) event.context()))) {
+                isChanged = true;
+            }
+        }
+        key.reset();
+        return isChanged;
+    }
+    
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.fusesource.jansi.AnsiConsole;
+import uk.co.samicemalone.tvmv.Display;
+
+/**
+ * TvmvClient submits an import to a running {@link TvmvServer} and prints the
+ * output streamed back by the server.
+ * @author Sam Malone
+ */
+public class TvmvClient {
+    
+    /**
+     * Status returned if there is no server to submit to
+     */
+    public static final int NOT_SUBMITTED = -1;
+    
+    private static final int CONNECT_TIMEOUT = 1000;
+    
+    /**
+     * Submit the program arguments to the running server. Relative input
+     * files are resolved against the current directory by the server.
+     * @param args program arguments
+     * @return exit status of the import or {@link #NOT_SUBMITTED} if no
+     * server is running or the server rejected the submission
+     * @throws IOException if the connection to the server fails after the
+     * import was submitted
+     */
+    public static int submit(String[] args) throws IOException {
+        Path portFile = TvmvServer.getPortFile();
+        if(!Files.exists(portFile)) {
+            return NOT_SUBMITTED;
+        }
+        String[] server = new String(Files.readAllBytes(portFile), StandardCharsets.UTF_8).trim().split(" ", 2);
+        if(server.length != 2) {
+            return NOT_SUBMITTED;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(server[0])), CONNECT_TIMEOUT);
+        } catch(IOException | NumberFormatException e) {
+            socket.close();
+            return NOT_SUBMITTED;
+        }
+        try (Socket s = socket) {
+            boolean isQuiet = System.console() == null;
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            out.writeUTF(server[1]);
+            out.writeUTF(Paths.get("").toAbsolutePath().toString());
+            out.writeBoolean(isQuiet);
+            out.writeInt(args.length);
+            for(String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            return receive(new DataInputStream(new BufferedInputStream(s.getInputStream())), isQuiet ? System.out : AnsiConsole.out());
+        }
+    }
+    
+    /**
+     * Print the output frames received from the server until the import exits
+     * @param in input stream of the server
+     * @param console console to print the output to
+     * @return exit status of the import or {@link #NOT_SUBMITTED} if the
+     * server rejected the submission
+     * @throws IOException if the connection to the server fails
+     */
+    static int receive(DataInputStream in, PrintStream console) throws IOException {
+        byte[] buffer = new byte[8192];
+        while(true) {
+            byte frame;
+            try {
+                frame = in.readByte();
+            } catch(EOFException e) {
+                throw new IOException("The tvmv server closed the connection before the import finished", e);
+            }
+            switch(frame) {
+                case TvmvServer.FRAME_OUTPUT:
+                    int length = in.readInt();
+                    if(length > buffer.length) {
+                        buffer = new byte[length];
+                    }
+                    in.readFully(buffer, 0, length);
+                    console.write(buffer, 0, length);
+                    console.flush();
+                    break;
+                case TvmvServer.FRAME_ERROR:
+                    String message = in.readUTF();
+                    String cause = in.readUTF();
+                    Display.onError(message, cause.isEmpty() ? null : cause);
+                    break;
+                case TvmvServer.FRAME_EXIT:
+                    return in.readInt();
+                case TvmvServer.FRAME_REJECT:
+                    Display.onSubmitRejected();
+                    return NOT_SUBMITTED;
+                default:
+                    throw new IOException("Unexpected response from the tvmv server");
+            }
+        }
+    }
+    
+}
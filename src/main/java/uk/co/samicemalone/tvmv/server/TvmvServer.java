@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import uk.co.samicemalone.tvmv.Args;
+import uk.co.samicemalone.tvmv.ConsoleWriter;
+import uk.co.samicemalone.tvmv.DaemonThreadFactory;
+import uk.co.samicemalone.tvmv.Display;
+import uk.co.samicemalone.tvmv.LibraryContext;
+import uk.co.samicemalone.tvmv.OS;
+import uk.co.samicemalone.tvmv.io.reader.AliasReader;
+import uk.co.samicemalone.tvmv.io.reader.ConfigReader;
+import uk.co.samicemalone.tvmv.model.Config;
+import uk.co.samicemalone.tvmv.model.Environment;
+
+/**
+ * TvmvServer is a resident tvmv service that keeps a {@link LibraryContext}
+ * between imports. Imports are submitted by {@link TvmvClient} over a
+ * loopback socket and are run one at a time in the order received, so
+ * concurrent submissions do not compete for the disks. The output of each
+ * import is streamed back to its client.
+ * <p>When a config file is given, it is watched along with the aliases.txt
+ * files and the LibraryContext is reloaded after they change. A reload is
+ * queued behind the imports already received, so it never changes the
+ * context of an import in progress.
+ * <p>Each request is read on the accepting thread, so a client that is slow
+ * to send its request never holds up the imports. Only complete requests are
+ * queued for import. The console of {@link Display} is shared by the whole
+ * process, so it is only set by the import thread for the import in progress.
+ * <p>The port and an access token are written to the server.port file in the
+ * default config directory. A client must send the token with each request.
+ * A request with the wrong token is rejected so the client can run the
+ * import itself.
+ * @author Sam Malone
+ */
+public class TvmvServer {
+    
+    public static final String PORT_FILE_NAME = "server.port";
+    
+    static final byte FRAME_OUTPUT = 'O';
+    static final byte FRAME_ERROR = 'E';
+    static final byte FRAME_EXIT = 'X';
+    static final byte FRAME_REJECT = 'R';
+    
+    private static final int REQUEST_TIMEOUT = 5000;
+    
+    /**
+     * Get the path of the port file in the default config directory
+     * @return port file path
+     */
+    public static Path getPortFile() {
+        return OS.getDefaultConfigDirectory().toPath().resolve(PORT_FILE_NAME);
+    }
+    
+    private final ExecutorService importer;
+    private final String token;
+    private final Path portFile;
+    private final Path configFile;
+    private volatile LibraryContext context;
+    private ServerSocket serverSocket;
+
+    /**
+     * Create a new TvmvServer
+     * @param context library context to import with
+     * @param configFile config file to reload the context from when it
+     * changes or null to not reload
+     */
+    public TvmvServer(LibraryContext context, Path configFile) {
+        this.context = context;
+        this.configFile = configFile;
+        this.importer = Executors.newSingleThreadExecutor(new DaemonThreadFactory("tvmv-import"));
+        this.token = newToken();
+        this.portFile = getPortFile();
+    }
+    
+    /**
+     * Listen for submissions until the program is terminated
+     * @throws IOException if unable to listen on the loopback address or
+     * unable to write the port file
+     */
+    public void run() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        writePortFile(serverSocket.getLocalPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }));
+        if(configFile != null) {
+            List<Path> watchedFiles = new ArrayList<>(AliasReader.getAliasFileCandidates());
+            watchedFiles.add(configFile);
+            new ConfigWatcher(watchedFiles, new Runnable() {
+                @Override
+                public void run() {
+                    importer.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            reload();
+                        }
+                    });
+                }
+            }).start();
+        }
+        Display.onServerStarted(serverSocket.getLocalPort());
+        while(!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch(IOException e) {
+                if(serverSocket.isClosed()) {
+                    break;
+                }
+                continue;
+            }
+            final Request request = readRequest(socket, token);
+            if(request == null) {
+                continue;
+            }
+            importer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(request);
+                }
+            });
+        }
+    }
+    
+    private void shutdown() {
+        try {
+            Files.deleteIfExists(portFile);
+            serverSocket.close();
+        } catch(IOException e) {
+            
+        }
+        importer.shutdownNow();
+        context.save();
+    }
+    
+    /**
+     * Reload the config and aliases into a new LibraryContext that reuses the
+     * caches of the current context. If the reload fails, the current context
+     * is kept. The shows to create are created again, as the shows file or
+     * the directory to create them in may have changed.
+     */
+    private void reload() {
+        LibraryContext current = context;
+        LibraryContext reloaded;
+        try {
+            Config config = ConfigReader.read(configFile.toString());
+            Environment env = new Environment(current.getEnvironment().getArgs(), config).initialiseDestinations();
+            reloaded = new LibraryContext(env, current);
+        } catch(Exception e) {
+            Display.onConfigReloadFailed(e.getMessage());
+            return;
+        }
+        context = reloaded;
+        Display.onConfigReloaded();
+        try {
+            reloaded.createShows();
+        } catch(IOException e) {
+            Display.onError(e.getMessage(), null);
+        }
+    }
+    
+    /**
+     * Read the request sent on the socket. If the token is wrong, the request
+     * is rejected. The socket is closed unless a request is returned.
+     * @param socket client socket
+     * @param token access token
+     * @return request or null if the request was rejected or could not be
+     * read within the request timeout
+     */
+    static Request readRequest(Socket socket, String token) {
+        try {
+            socket.setSoTimeout(REQUEST_TIMEOUT);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if(!token.equals(in.readUTF())) {
+                out.writeByte(FRAME_REJECT);
+                out.flush();
+                closeQuietly(socket);
+                return null;
+            }
+            Path cwd = Paths.get(in.readUTF());
+            boolean isQuiet = in.readBoolean();
+            String[] args = new String[in.readInt()];
+            for(int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            socket.setSoTimeout(0);
+            return new Request(socket, out, args, cwd, isQuiet);
+        } catch(IOException | RuntimeException e) {
+            closeQuietly(socket);
+            return null;
+        }
+    }
+    
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch(IOException e) {
+            
+        }
+    }
+    
+    private void handle(Request request) {
+        try (Socket s = request.socket) {
+            DataOutputStream out = request.out;
+            int status = runImport(request.args, request.cwd, request.isQuiet, out);
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(status);
+            out.flush();
+        } catch(IOException e) {
+            
+        }
+    }
+    
+    private int runImport(String[] rawArgs, Path cwd, boolean isQuiet, DataOutputStream out) throws IOException {
+        PrintStream clientOut = new PrintStream(new FrameOutputStream(out), false, "UTF-8");
+        Display.setConsole(new ConsoleWriter(isQuiet, clientOut));
+        try {
+            Args args = Args.parse(rawArgs).resolveInputFiles(cwd);
+            LibraryContext current = context;
+            current.run(current.getEnvironment().forArgs(args));
+            return 0;
+        } catch(Exception e) {
+            Display.flush();
+            Throwable t = e.getCause();
+            synchronized(out) {
+                out.writeByte(FRAME_ERROR);
+                out.writeUTF(String.valueOf(e.getMessage()));
+                out.writeUTF(t == null ? "" : String.valueOf(t.getMessage()));
+            }
+            return 1;
+        } finally {
+            Display.setConsole(null);
+        }
+    }
+    
+    private void writePortFile(int port) throws IOException {
+        Files.createDirectories(portFile.getParent());
+        Path tmpFile = portFile.resolveSibling(PORT_FILE_NAME + ".tmp");
+        Files.deleteIfExists(tmpFile);
+        Files.createFile(tmpFile);
+        try {
+            Files.setPosixFilePermissions(tmpFile, PosixFilePermissions.fromString("rw-------"));
+        } catch(UnsupportedOperationException e) {
+            
+        }
+        Files.write(tmpFile, (port + " " + token).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmpFile, portFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Request is an import read from a client that is waiting to be run
+     */
+    static class Request {
+        
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final String[] args;
+        private final Path cwd;
+        private final boolean isQuiet;
+
+        public Request(Socket socket, DataOutputStream out, String[] args, Path cwd, boolean isQuiet) {
+            this.socket = socket;
+            this.out = out;
+            this.args = args;
+            this.cwd = cwd;
+            this.isQuiet = isQuiet;
+        }
+
+        public String[] getArgs() {
+            return args;
+        }
+
+        public Path getWorkingDirectory() {
+            return cwd;
+        }
+        
+    }
+    
+    /**
+     * OutputStream that writes each chunk of output as an output frame
+     */
+    private static class FrameOutputStream extends OutputStream {
+        
+        private final DataOutputStream out;
+
+        public FrameOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized(out) {
+                out.writeByte(FRAME_OUTPUT);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized(out) {
+                out.flush();
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import uk.co.samicemalone.tvmv.exception.FileStillExistsException;
+import uk.co.samicemalone.tvmv.exception.TransferStalledException;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class BatchTest {
+
+    /**
+     * Test that errors for a specific file are permanent, even when wrapped
+     */
+    @Test
+    public void testIsTransientFileErrors() {
+        assertFalse(Batch.isTransient(new NoSuchFileException("Scrubs.s01e01.mkv")));
+        assertFalse(Batch.isTransient(new FileNotFoundException("Scrubs.s01e01.mkv")));
+        assertFalse(Batch.isTransient(new FileStillExistsException("Notice", new AccessDeniedException("Scrubs.s01e01.mkv"))));
+        assertFalse(Batch.isTransient(new IOException("Unable to move the file.", new AccessDeniedException("Scrubs.s01e01.mkv"))));
+        assertFalse(Batch.isTransient(new TransferStalledException("stalled", false)));
+        assertFalse(Batch.isTransient(new IllegalStateException()));
+    }
+
+    /**
+     * Test that IO errors that are not specific to a file are transient, even
+     * when wrapped by a native move
+     */
+    @Test
+    public void testIsTransientIOErrors() {
+        assertTrue(Batch.isTransient(new IOException("Host is down")));
+        assertTrue(Batch.isTransient(new IOException("Unable to move the file.", new FileSystemException("Scrubs.s01e01.mkv", null, "Host is down"))));
+        assertTrue(Batch.isTransient(new TransferStalledException("stalled")));
+    }
+
+    /**
+     * Test that the retry delay doubles after each attempt
+     */
+    @Test
+    public void testGetRetryDelay() {
+        assertEquals(10000, Batch.getRetryDelay(0));
+        assertEquals(20000, Batch.getRetryDelay(1));
+        assertEquals(40000, Batch.getRetryDelay(2));
+    }
+
+    /**
+     * Test that the failures are recorded and finishing the batch fails
+     */
+    @Test(expected = IOException.class)
+    public void testFinishWithFailures() throws IOException {
+        Batch batch = new Batch(true);
+        batch.onCompleted();
+        batch.onFailed("Scrubs.s01e01.mkv", new NoSuchFileException("Scrubs.s01e01.mkv"));
+        assertEquals(1, batch.getFailures().size());
+        batch.finish();
+    }
+    
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class ConsoleWriterTest {
+    
+    private ByteArrayOutputStream bytes;
+    private PrintStream out;
+    
+    @Before
+    public void setUp() throws Exception {
+        bytes = new ByteArrayOutputStream();
+        out = new PrintStream(bytes, false, "UTF-8");
+    }
+    
+    private String getOutput() {
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test that the output is written in the order printed once flushed
+     */
+    @Test
+    public void testFlushWritesInOrder() {
+        ConsoleWriter writer = new ConsoleWriter(false, out);
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            writer.print(i + "\n");
+            expected.append(i).append('\n');
+        }
+        writer.flush();
+        assertEquals(expected.toString(), getOutput());
+    }
+
+    /**
+     * Test that progress frames are dropped when quiet
+     */
+    @Test
+    public void testQuietDropsProgress() {
+        ConsoleWriter writer = new ConsoleWriter(true, out);
+        writer.print("Copying Scrubs.s01e01.mkv...");
+        writer.printProgress("\r 50%");
+        writer.print("done\n");
+        writer.flush();
+        assertEquals("Copying Scrubs.s01e01.mkv...done\n", getOutput());
+    }
+
+    /**
+     * Test that a quiet writer never loads Jansi, so it isn't loaded when the
+     * output is redirected. The writer is loaded by its own class loader so
+     * the classes already loaded by other tests are not seen.
+     */
+    @Test
+    public void testQuietDoesNotLoadJansi() throws Exception {
+        String[] classPath = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[classPath.length];
+        for(int i = 0; i < classPath.length; i++) {
+            urls[i] = new File(classPath[i]).toURI().toURL();
+        }
+        final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+        try (URLClassLoader loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                loaded.add(name);
+                return super.loadClass(name, resolve);
+            }
+        }) {
+            Class<?> c = loader.loadClass(ConsoleWriter.class.getName());
+            Object writer = c.getConstructor(boolean.class, PrintStream.class).newInstance(true, out);
+            c.getMethod("print", String.class).invoke(writer, "Copying Scrubs.s01e01.mkv...done\n");
+            c.getMethod("flush").invoke(writer);
+        }
+        assertEquals("Copying Scrubs.s01e01.mkv...done\n", getOutput());
+        for(String name : loaded) {
+            assertFalse(name, name.startsWith("org.fusesource.jansi"));
+        }
+    }
+
+    /**
+     * Test that the lines printed by different threads are never interleaved
+     */
+    @Test
+    public void testConcurrentLinesNotInterleaved() throws InterruptedException {
+        final ConsoleWriter writer = new ConsoleWriter(true, out);
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            final String line = String.valueOf((char) ('a' + t)) + "-0123456789-" + t + "\n";
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < 500; i++) {
+                        writer.print(line);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        writer.flush();
+        String[] lines = getOutput().split("\n");
+        assertEquals(threads.length * 500, lines.length);
+        for(String line : lines) {
+            int t = line.charAt(0) - 'a';
+            assertEquals(String.valueOf(line.charAt(0)) + "-0123456789-" + t, line);
+        }
+    }
+    
+}
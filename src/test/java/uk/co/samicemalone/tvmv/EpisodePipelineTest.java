@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.samicemalone.libtv.matcher.path.AliasedTVLibrary;
+import uk.co.samicemalone.libtv.model.AliasMap;
+import uk.co.samicemalone.libtv.model.EpisodeMatch;
+import uk.co.samicemalone.tvmv.io.ConflictResolver.Resolution;
+import uk.co.samicemalone.tvmv.io.CopyOperation;
+import uk.co.samicemalone.tvmv.io.EpisodeIO;
+import uk.co.samicemalone.tvmv.io.EpisodesPathResolver;
+import uk.co.samicemalone.tvmv.io.IOOperation;
+import uk.co.samicemalone.tvmv.model.Source;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class EpisodePipelineTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that the episodes of a source prepared concurrently are
+     * transferred in the order they were matched, even if the first episode
+     * takes the longest to prepare
+     */
+    @Test
+    public void testConcurrentSourceKeepsOrder() throws Exception {
+        Path tvDir = folder.newFolder("TV").toPath();
+        Files.createDirectories(tvDir.resolve("Scrubs"));
+        Path sourceDir = folder.newFolder("Downloads").toPath();
+        List<String> inputFiles = new ArrayList<>();
+        for(int i = 1; i <= 4; i++) {
+            inputFiles.add(Files.write(sourceDir.resolve("Scrubs.s01e0" + i + ".mkv"), new byte[16]).toString());
+        }
+        EpisodesPathResolver resolver = new EpisodesPathResolver(new AliasedTVLibrary(Collections.singletonList(tvDir.toString()), new AliasMap()));
+        final List<String> transferred = Collections.synchronizedList(new ArrayList<String>());
+        EpisodeIO episodeIO = new EpisodeIO(resolver, false) {
+            @Override
+            public Path findFiled(EpisodeMatch sourceEpisode) throws IOException {
+                if(sourceEpisode.getEpisodeFile().getName().contains("e01")) {
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return null;
+            }
+            
+            @Override
+            public void transfer(IOOperation iop, EpisodeMatch sourceEpisode, Path destPath, Resolution resolution) throws IOException {
+                transferred.add(sourceEpisode.getEpisodeFile().getName());
+            }
+        };
+        EpisodePipeline pipeline = new EpisodePipeline(new EpisodeMatcher(false), resolver, episodeIO);
+        pipeline.run(Collections.singletonMap(new Source(sourceDir.toString(), 0, 4), inputFiles), new CopyOperation());
+        assertEquals(Arrays.asList("Scrubs.s01e01.mkv", "Scrubs.s01e02.mkv", "Scrubs.s01e03.mkv", "Scrubs.s01e04.mkv"), transferred);
+    }
+    
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs the native executable built by the native profile end-to-end. Skipped
+ * unless the tvmv.native.binary system property is the path of the executable.
+ * @author Sam Malone
+ */
+public class NativeImageIT {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File binary;
+    private Path home;
+    private Path source;
+    private Path destination;
+    private Path config;
+    
+    @Before
+    public void setUp() throws IOException {
+        String path = System.getProperty("tvmv.native.binary");
+        assumeTrue(path != null && new File(path).canExecute());
+        binary = new File(path);
+        home = folder.newFolder("home").toPath();
+        source = folder.newFolder("source").toPath();
+        destination = folder.newFolder("tv", "Scrubs").toPath().getParent();
+        config = folder.getRoot().toPath().resolve("tvmv.conf");
+        Files.write(config, Collections.singletonList("DESTINATION = " + destination), StandardCharsets.UTF_8);
+    }
+    
+    private int run(String... args) throws IOException, InterruptedException {
+        String[] command = new String[args.length + 2];
+        command[0] = binary.getAbsolutePath();
+        command[1] = "-Duser.home=" + home;
+        System.arraycopy(args, 0, command, 2, args.length);
+        Process p = new ProcessBuilder(Arrays.asList(command)).inheritIO().start();
+        return p.waitFor();
+    }
+
+    /**
+     * Test that an episode is copied into the season directory
+     */
+    @Test
+    public void testCopyEpisode() throws IOException, InterruptedException {
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+        Path episode = Files.write(source.resolve("Scrubs.s01e02.mkv"), data);
+        assertEquals(0, run(episode.toString(), "-c", "--config", config.toString()));
+        Path copied = destination.resolve("Scrubs").resolve("Season 1").resolve("Scrubs.s01e02.mkv");
+        assertTrue(Files.exists(episode));
+        assertArrayEquals(data, Files.readAllBytes(copied));
+    }
+
+    /**
+     * Test that the program fails if the config file does not exist
+     */
+    @Test
+    public void testMissingConfig() throws IOException, InterruptedException {
+        Path episode = Files.write(source.resolve("Scrubs.s01e03.mkv"), new byte[10]);
+        assertEquals(1, run(episode.toString(), "--config", folder.getRoot().toPath().resolve("missing.conf").toString()));
+    }
+    
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import uk.co.samicemalone.tvmv.exception.TransferStalledException;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class RetryQueueTest {
+
+    /**
+     * Test that a stopped stall is queued for a retry even if the batch
+     * doesn't keep going
+     */
+    @Test
+    public void testStalledRetriedWithoutKeepGoing() throws IOException {
+        Batch batch = new Batch(false);
+        RetryQueue retries = new RetryQueue(batch);
+        retries.transfer(new FailingTask(new TransferStalledException("stalled")));
+        assertTrue(retries.getNextDelay() > 0);
+        assertTrue(batch.getFailures().isEmpty());
+    }
+
+    /**
+     * Test that a transient error ends the run if the batch doesn't keep going
+     */
+    @Test
+    public void testTransientThrownWithoutKeepGoing() {
+        RetryQueue retries = new RetryQueue(new Batch(false));
+        try {
+            retries.transfer(new FailingTask(new IOException("Host is down")));
+            fail("expected the transient error to be thrown");
+        } catch (IOException e) {
+            
+        }
+        assertEquals(-1, retries.getNextDelay());
+    }
+
+    /**
+     * Test that a transient error is queued for a retry and a file error is
+     * recorded as failed when the batch keeps going
+     */
+    @Test
+    public void testKeepGoing() throws IOException {
+        Batch batch = new Batch(true);
+        RetryQueue retries = new RetryQueue(batch);
+        retries.transfer(new FailingTask(new IOException("Host is down")));
+        retries.transfer(new FailingTask(new NoSuchFileException("Scrubs.s01e01.mkv")));
+        assertTrue(retries.getNextDelay() > 0);
+        assertEquals(1, batch.getFailures().size());
+        assertEquals("Scrubs.s01e01.mkv", batch.getFailures().get(0).getInput());
+    }
+    
+    private static class FailingTask extends RetryQueue.Task {
+        
+        private final IOException error;
+
+        public FailingTask(IOException error) {
+            super("Scrubs.s01e01.mkv");
+            this.error = error;
+        }
+
+        @Override
+        public void transfer() throws IOException {
+            throw error;
+        }
+        
+    }
+    
+}
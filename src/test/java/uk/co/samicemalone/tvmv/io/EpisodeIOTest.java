@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.samicemalone.libtv.matcher.TVMatcher;
+import uk.co.samicemalone.libtv.matcher.path.AliasedTVLibrary;
+import uk.co.samicemalone.libtv.model.AliasMap;
+import uk.co.samicemalone.libtv.model.EpisodeMatch;
+import uk.co.samicemalone.tvmv.io.ConflictResolver.Resolution;
+import uk.co.samicemalone.tvmv.model.ReplacementMapping;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class EpisodeIOTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path tvDir;
+    private Path sourceDir;
+    private LibraryInventory inventory;
+    private EpisodeIO episodeIO;
+    
+    @Before
+    public void setUp() throws IOException {
+        tvDir = folder.newFolder("TV").toPath();
+        sourceDir = folder.newFolder("Downloads").toPath();
+        Files.createDirectories(tvDir.resolve("Scrubs"));
+        inventory = LibraryInventory.load(folder.newFolder("config").toPath());
+        AliasedTVLibrary library = new AliasedTVLibrary(Collections.singletonList(tvDir.toString()), new AliasMap());
+        episodeIO = new EpisodeIO(new EpisodesPathResolver(library), false);
+        episodeIO.setLibraryInventory(inventory);
+    }
+    
+    private EpisodeMatch newSource(String name) throws Exception {
+        Path source = Files.write(sourceDir.resolve(name), new byte[1024]);
+        return new TVMatcher().matchOrThrow(source, TVMatcher.MatchElement.ALL);
+    }
+    
+    private ReplacementMapping<Set<EpisodeMatch>> newMultiPartMapping(EpisodeMatch source) throws Exception {
+        Path destDir = episodeIO.createDestinationDirectories(Collections.singletonList(source)).iterator().next();
+        Set<EpisodeMatch> destinations = new LinkedHashSet<>();
+        for(String name : Arrays.asList("Scrubs.s01e01.mkv", "Scrubs.s01e02.mkv")) {
+            Path part = Files.write(destDir.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+            destinations.add(new TVMatcher().matchOrThrow(part, TVMatcher.MatchElement.ALL));
+        }
+        return new ReplacementMapping<Set<EpisodeMatch>>(Collections.singleton(source), destinations);
+    }
+    
+    private static List<String> list(Path dir) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for(Path p : stream) {
+                names.add(p.getFileName().toString());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Test that every destination episode of a multi-episode replacement is
+     * stashed and removed
+     */
+    @Test
+    public void testReplaceMultiPart() throws Exception {
+        EpisodeMatch source = newSource("Scrubs.s01e01-02.mkv");
+        ReplacementMapping<Set<EpisodeMatch>> mapping = newMultiPartMapping(source);
+        episodeIO.replaceEpisode(new CopyOperation(), mapping);
+        Path destDir = tvDir.resolve("Scrubs").resolve("Season 1");
+        assertEquals(Collections.singletonList("Scrubs.s01e01-02.mkv"), list(destDir));
+    }
+
+    /**
+     * Test that every stashed destination episode of a multi-episode
+     * replacement is restored when the replacement fails
+     */
+    @Test
+    public void testReplaceMultiPartRollback() throws Exception {
+        EpisodeMatch source = newSource("Scrubs.s01e01-02.mkv");
+        ReplacementMapping<Set<EpisodeMatch>> mapping = newMultiPartMapping(source);
+        Files.delete(source.getEpisodeFile().toPath());
+        try {
+            episodeIO.replaceEpisode(new CopyOperation(), mapping);
+            fail("the replacement of a missing source should fail");
+        } catch (IOException e) {
+            
+        }
+        Path destDir = tvDir.resolve("Scrubs").resolve("Season 1");
+        assertEquals(Arrays.asList("Scrubs.s01e01.mkv", "Scrubs.s01e02.mkv"), list(destDir));
+        for(String name : list(destDir)) {
+            assertArrayEquals(name.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(destDir.resolve(name)));
+        }
+    }
+
+    /**
+     * Test that the inventory still contains an episode whose replacement
+     * failed and was rolled back
+     */
+    @Test
+    public void testReplaceRollbackKeepsInventory() throws Exception {
+        EpisodeMatch source = newSource("Scrubs.s01e01.mkv");
+        Path destDir = episodeIO.createDestinationDirectories(Collections.singletonList(source)).iterator().next();
+        Path destPath = Files.write(episodeIO.getDestinationPath(source, destDir), new byte[10]);
+        assertTrue(inventory.contains(destPath));
+        Files.delete(source.getEpisodeFile().toPath());
+        try {
+            episodeIO.transfer(new CopyOperation(), source, destPath, Resolution.REPLACE);
+            fail("the replacement of a missing source should fail");
+        } catch (IOException e) {
+            
+        }
+        assertTrue(Files.exists(destPath));
+        assertTrue(inventory.contains(destPath));
+    }
+    
+}
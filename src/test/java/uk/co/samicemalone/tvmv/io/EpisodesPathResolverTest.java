@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.samicemalone.libtv.exception.SeasonsPathNotFoundException;
+import uk.co.samicemalone.libtv.matcher.path.AliasedTVLibrary;
+import uk.co.samicemalone.libtv.model.AliasMap;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class EpisodesPathResolverTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path tvDir;
+    private EpisodesPathResolver resolver;
+    
+    @Before
+    public void setUp() throws IOException {
+        tvDir = folder.newFolder("TV").toPath();
+        Files.createDirectories(tvDir.resolve("Scrubs"));
+        resolver = new EpisodesPathResolver(new AliasedTVLibrary(Collections.singletonList(tvDir.toString()), new AliasMap()));
+    }
+
+    /**
+     * Test that a season directory resolved but not created by
+     * getEpisodesPath is created by newEpisodesPath
+     */
+    @Test
+    public void testNewEpisodesPathCreatesResolvedPath() throws IOException {
+        Path resolved = resolver.getEpisodesPath("Scrubs", 2);
+        assertFalse(Files.exists(resolved));
+        assertEquals(resolved, resolver.newEpisodesPath("Scrubs", 2));
+        assertTrue(Files.isDirectory(resolved));
+    }
+
+    /**
+     * Test that a show that cannot be found is cached but each lookup throws
+     * a new exception, so the stack trace and suppressed exceptions of one
+     * failure are not shared with the next
+     */
+    @Test
+    public void testShowNotFoundThrowsNewException() throws IOException {
+        SeasonsPathNotFoundException first = newEpisodesPathNotFound("Friends");
+        Files.createDirectories(tvDir.resolve("Friends"));
+        SeasonsPathNotFoundException second = newEpisodesPathNotFound("Friends");
+        assertNotSame(first, second);
+        assertEquals(first.getMessage(), second.getMessage());
+    }
+    
+    private SeasonsPathNotFoundException newEpisodesPathNotFound(String show) throws IOException {
+        try {
+            resolver.newEpisodesPath(show, 1);
+            fail("expected SeasonsPathNotFoundException");
+            return null;
+        } catch (SeasonsPathNotFoundException e) {
+            return e;
+        }
+    }
+    
+}
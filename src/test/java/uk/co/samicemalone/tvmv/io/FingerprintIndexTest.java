@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class FingerprintIndexTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private FingerprintIndex index;
+    private Path downloads;
+    private Path destDir;
+    private byte[] data;
+    
+    @Before
+    public void setUp() throws IOException {
+        index = FingerprintIndex.load(folder.getRoot().toPath().resolve("fingerprints.idx"));
+        downloads = folder.newFolder("Downloads").toPath();
+        destDir = folder.newFolder("TV").toPath();
+        data = new byte[4 * FileFingerprint.SAMPLE_SIZE];
+        new Random(1).nextBytes(data);
+    }
+
+    /**
+     * Test that an episode filed under a different name is found
+     */
+    @Test
+    public void testFindRenamed() throws IOException {
+        Path filed = file(destDir, "Scrubs.s01e01.mkv", data);
+        index.add(filed, filed);
+        Path source = file(downloads, "scrubs.101.mkv", data);
+        assertEquals(filed, index.find(source));
+    }
+
+    /**
+     * Test that an episode that only differs from a filed episode outside of
+     * the sampled blocks is not found
+     */
+    @Test
+    public void testFindSampledCollision() throws IOException {
+        Path filed = file(destDir, "Scrubs.s01e01.mkv", data);
+        index.add(filed, filed);
+        byte[] other = data.clone();
+        other[FileFingerprint.SAMPLE_SIZE + 10]++;
+        Path source = file(downloads, "Scrubs.s01e01.repack.mkv", other);
+        assertEquals(FileFingerprint.sampled(filed), FileFingerprint.sampled(source));
+        assertNull(index.find(source));
+    }
+
+    /**
+     * Test that the fingerprint of a source found in a previous run is not
+     * used once the source has been replaced by a different file
+     */
+    @Test
+    public void testResetBetweenRuns() throws IOException {
+        Path source = file(downloads, "Scrubs.s01e01.mkv", data);
+        index.find(source);
+        index.reset();
+        byte[] other = new byte[1024];
+        new Random(2).nextBytes(other);
+        Files.write(source, other);
+        Path dest = Files.copy(source, destDir.resolve("Scrubs.s01e01.mkv"));
+        index.add(source, dest);
+        assertEquals(dest, index.find(file(downloads, "scrubs.101.mkv", other)));
+    }
+    
+    private static Path file(Path dir, String name, byte[] contents) throws IOException {
+        return Files.write(dir.resolve(name), contents);
+    }
+    
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.After;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.samicemalone.tvmv.exception.TransferStalledException;
+import uk.co.samicemalone.tvmv.model.IOPriority;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class IOOperationTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path source;
+    private Path destDir;
+    private byte[] data;
+    
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[300 * 1024];
+        new Random(1).nextBytes(data);
+        source = Files.write(folder.newFolder("Downloads").toPath().resolve("Scrubs.s01e01.mkv"), data);
+        destDir = folder.newFolder("TV").toPath();
+    }
+    
+    @After
+    public void tearDown() {
+        BandwidthLimits.setLimits(Collections.<String, Long>emptyMap());
+        IOOperation.setIOPriority(IOPriority.NORMAL);
+    }
+
+    /**
+     * Test that a transfer waiting for its bandwidth limit for longer than the
+     * stall timeout is not aborted as stalled
+     */
+    @Test
+    public void testThrottledTransferNotStalled() throws IOException {
+        BandwidthLimits.setLimit(destDir.toString(), 100 * 1024);
+        Path dest = destDir.resolve("Scrubs.s01e01.mkv");
+        new CopyOperation().setOperands(source, dest).setStallTimeout(1000).start(false);
+        assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    /**
+     * Test that a progress move deletes the source once it has been copied
+     */
+    @Test
+    public void testMoveProgress() throws IOException {
+        Path dest = destDir.resolve("Scrubs.s01e01.mkv");
+        new MoveOperation().setOperands(source, dest).setStallTimeout(1000).start(false);
+        assertArrayEquals(data, Files.readAllBytes(dest));
+        assertFalse(Files.exists(source));
+    }
+
+    /**
+     * Test that a copy of a file that isn't a whole number of pages is not
+     * left at the preallocated size
+     */
+    @Test
+    public void testUnalignedCopy() throws IOException {
+        byte[] unaligned = Arrays.copyOf(data, data.length + 123);
+        Files.write(source, unaligned);
+        Path dest = destDir.resolve("Scrubs.s01e01.mkv");
+        new CopyOperation().setOperands(source, dest).setStallTimeout(1000).start(false);
+        assertArrayEquals(unaligned, Files.readAllBytes(dest));
+    }
+
+    /**
+     * Test that interrupting a transfer stops the copy and removes the
+     * preallocated destination
+     */
+    @Test
+    public void testInterruptedCopyRemovesPartial() throws Exception {
+        BandwidthLimits.setLimit(destDir.toString(), 50 * 1024);
+        Path dest = destDir.resolve("Scrubs.s01e01.mkv");
+        final Thread caller = Thread.currentThread();
+        Thread interrupter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                    caller.interrupt();
+                } catch (InterruptedException e) {
+                    
+                }
+            }
+        };
+        interrupter.start();
+        try {
+            new CopyOperation().setOperands(source, dest).setStallTimeout(1000).start(false);
+            fail("expected the interrupted transfer to fail");
+        } catch (IOException e) {
+            
+        } finally {
+            interrupter.join();
+            Thread.interrupted();
+        }
+        for(int i = 0; i < 20 && Files.exists(dest); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(Files.exists(dest));
+    }
+
+    /**
+     * Test that an idle priority transfer still completes, whether or not the
+     * priority can be applied on this platform
+     */
+    @Test
+    public void testIdlePriorityCopy() throws IOException {
+        IOOperation.setIOPriority(IOPriority.IDLE);
+        Path dest = destDir.resolve("Scrubs.s01e01.mkv");
+        new CopyOperation().setOperands(source, dest).setStallTimeout(1000).start(false);
+        assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    /**
+     * Test that a native transfer that stops writing is aborted as a stopped
+     * stall and its partially written destination is discarded
+     */
+    @Test
+    public void testStalledNativeDiscardsPartial() throws IOException {
+        Path dest = destDir.resolve("Scrubs.s01e01.mkv");
+        try {
+            new StallingOperation(true).setOperands(source, dest).setStallTimeout(1000).start(true);
+            fail("expected the transfer to stall");
+        } catch (TransferStalledException e) {
+            assertTrue(e.isStopped());
+        }
+        assertFalse(Files.exists(dest));
+    }
+
+    /**
+     * Test that a native transfer that can't be stopped is reported as a stall
+     * that must not be retried, and its destination is left alone
+     */
+    @Test
+    public void testStalledNativeNotStopped() throws IOException {
+        Path dest = destDir.resolve("Scrubs.s01e01.mkv");
+        try {
+            new StallingOperation(false).setOperands(source, dest).setStallTimeout(1000).start(true);
+            fail("expected the transfer to stall");
+        } catch (TransferStalledException e) {
+            assertFalse(e.isStopped());
+        }
+        assertTrue(Files.exists(dest));
+    }
+    
+    /**
+     * StallingOperation writes part of the destination and then blocks
+     */
+    private static class StallingOperation extends IOOperation {
+        
+        private final boolean isInterruptible;
+
+        public StallingOperation(boolean isInterruptible) {
+            this.isInterruptible = isInterruptible;
+        }
+
+        @Override
+        public IOOperation startNative() throws IOException {
+            Files.write(destination, new byte[10]);
+            long end = System.currentTimeMillis() + 5000;
+            while(System.currentTimeMillis() < end) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    if(isInterruptible) {
+                        throw new InterruptedIOException("The transfer was interrupted");
+                    }
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public IOOperation startProgress() throws IOException {
+            return startNative();
+        }
+
+        @Override
+        public void rollbackOrThrow() throws IOException {
+            
+        }
+
+        @Override
+        public Type getType() {
+            return Type.COPY;
+        }
+
+        @Override
+        public IOOperation newInstance() {
+            return new StallingOperation(isInterruptible);
+        }
+        
+    }
+    
+}
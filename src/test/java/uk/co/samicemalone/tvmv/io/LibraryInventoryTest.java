@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class LibraryInventoryTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path configDir;
+    private Path seasonDir;
+    
+    @Before
+    public void setUp() throws IOException {
+        configDir = folder.newFolder("config").toPath();
+        seasonDir = folder.newFolder("Scrubs", "Season 1").toPath();
+        Files.createFile(seasonDir.resolve("Scrubs.s01e01.mkv"));
+        setOld(seasonDir);
+    }
+    
+    private static void setOld(Path dir) throws IOException {
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+    }
+
+    /**
+     * Test that a saved listing is used if the directory has not been modified
+     */
+    @Test
+    public void testListEpisodesUnmodified() throws IOException {
+        LibraryInventory inventory = LibraryInventory.load(configDir);
+        assertEquals(Collections.singletonList(seasonDir.resolve("Scrubs.s01e01.mkv")), inventory.listEpisodes(seasonDir));
+        inventory.save();
+        FileTime modified = Files.getLastModifiedTime(seasonDir);
+        Files.createFile(seasonDir.resolve("Scrubs.s01e02.mkv"));
+        Files.setLastModifiedTime(seasonDir, modified);
+        inventory = LibraryInventory.load(configDir);
+        assertFalse(inventory.contains(seasonDir.resolve("Scrubs.s01e02.mkv")));
+        assertEquals(1, inventory.listEpisodes(seasonDir).size());
+    }
+
+    /**
+     * Test that the directory is listed again if it has been modified
+     */
+    @Test
+    public void testListEpisodesModified() throws IOException {
+        LibraryInventory inventory = LibraryInventory.load(configDir);
+        inventory.listEpisodes(seasonDir);
+        inventory.save();
+        Files.createFile(seasonDir.resolve("Scrubs.s01e02.mkv"));
+        setOld(seasonDir);
+        Files.setLastModifiedTime(seasonDir, FileTime.fromMillis(Files.getLastModifiedTime(seasonDir).toMillis() + 1000));
+        inventory = LibraryInventory.load(configDir);
+        assertTrue(inventory.contains(seasonDir.resolve("Scrubs.s01e02.mkv")));
+        assertEquals(2, inventory.listEpisodes(seasonDir).size());
+    }
+
+    /**
+     * Test that files added and removed by tvmv are applied to the listing
+     */
+    @Test
+    public void testOnAddedRemoved() throws IOException {
+        LibraryInventory inventory = LibraryInventory.load(configDir);
+        assertFalse(inventory.contains(seasonDir.resolve("Scrubs.s01e02.mkv")));
+        inventory.onAdded(seasonDir.resolve("Scrubs.s01e02.mkv"));
+        inventory.onRemoved(seasonDir.resolve("Scrubs.s01e01.mkv"));
+        assertTrue(inventory.contains(seasonDir.resolve("Scrubs.s01e02.mkv")));
+        assertFalse(inventory.contains(seasonDir.resolve("Scrubs.s01e01.mkv")));
+    }
+
+    /**
+     * Test that an inventory kept across runs sees a directory modified
+     * outside of tvmv once it has been reset
+     */
+    @Test
+    public void testResetBetweenRuns() throws IOException {
+        LibraryInventory inventory = LibraryInventory.load(configDir);
+        assertEquals(1, inventory.listEpisodes(seasonDir).size());
+        inventory.save();
+        Files.createFile(seasonDir.resolve("Scrubs.s01e02.mkv"));
+        setOld(seasonDir);
+        Files.setLastModifiedTime(seasonDir, FileTime.fromMillis(Files.getLastModifiedTime(seasonDir).toMillis() + 1000));
+        assertFalse(inventory.contains(seasonDir.resolve("Scrubs.s01e02.mkv")));
+        inventory.reset();
+        assertTrue(inventory.contains(seasonDir.resolve("Scrubs.s01e02.mkv")));
+        assertEquals(2, inventory.listEpisodes(seasonDir).size());
+    }
+
+    /**
+     * Test that a record changed by tvmv is not saved if the directory has
+     * been modified by something else since
+     */
+    @Test
+    public void testSaveModifiedElsewhere() throws IOException {
+        LibraryInventory inventory = LibraryInventory.load(configDir);
+        inventory.listEpisodes(seasonDir);
+        Files.createFile(seasonDir.resolve("Scrubs.s01e02.mkv"));
+        setOld(seasonDir);
+        inventory.onAdded(seasonDir.resolve("Scrubs.s01e02.mkv"));
+        Files.createFile(seasonDir.resolve("Scrubs.s01e03.mkv"));
+        setOld(seasonDir);
+        Files.setLastModifiedTime(seasonDir, FileTime.fromMillis(Files.getLastModifiedTime(seasonDir).toMillis() + 1000));
+        inventory.save();
+        inventory = LibraryInventory.load(configDir);
+        assertTrue(inventory.contains(seasonDir.resolve("Scrubs.s01e03.mkv")));
+        assertEquals(3, inventory.listEpisodes(seasonDir).size());
+    }
+    
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class ReclaimerTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path journal;
+    
+    @Before
+    public void setUp() throws IOException {
+        journal = folder.getRoot().toPath().resolve("config").resolve("pending.deletions");
+    }
+
+    /**
+     * Test that the reclaimed paths are deleted and removed from the journal
+     * while the paths journaled by another process are kept
+     */
+    @Test
+    public void testFinishKeepsOtherPending() throws IOException {
+        Path tmp = folder.newFile("Scrubs.s01e01.mkv.old.tmp").toPath();
+        String other = folder.getRoot().toPath().resolve("other.old.tmp").toString();
+        Reclaimer reclaimer = Reclaimer.start(journal);
+        reclaimer.reclaim(Collections.singletonList(tmp));
+        Files.write(journal, Collections.singletonList(other), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertTrue(reclaimer.finish().isEmpty());
+        assertFalse(Files.exists(tmp));
+        assertEquals(Collections.singletonList(other), Files.readAllLines(journal, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test that a path that cannot be deleted stays pending and is deleted by
+     * the next Reclaimer once it can be
+     */
+    @Test
+    public void testFailedStaysPending() throws IOException {
+        Path dir = folder.newFolder("Scrubs.s01e01.mkv.old.tmp").toPath();
+        Files.createFile(dir.resolve("episode.mkv"));
+        Reclaimer reclaimer = Reclaimer.start(journal);
+        reclaimer.reclaim(Collections.singletonList(dir));
+        List<Path> failed = reclaimer.finish();
+        assertEquals(Collections.singletonList(dir), failed);
+        assertEquals(Collections.singletonList(dir.toAbsolutePath().toString()), Files.readAllLines(journal, StandardCharsets.UTF_8));
+        Files.delete(dir.resolve("episode.mkv"));
+        assertTrue(Reclaimer.start(journal).finish().isEmpty());
+        assertFalse(Files.exists(dir));
+        assertTrue(Files.readAllLines(journal, StandardCharsets.UTF_8).isEmpty());
+    }
+    
+}
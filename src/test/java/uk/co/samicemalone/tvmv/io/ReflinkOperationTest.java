@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class ReflinkOperationTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path source;
+    private Path dest;
+    private final byte[] existing = new byte[] { 1, 2, 3 };
+    
+    @Before
+    public void setUp() throws IOException {
+        source = Files.write(folder.newFile("Scrubs.s01e01.mkv").toPath(), new byte[] { 4, 5, 6, 7 });
+        dest = Files.write(folder.newFolder("TV").toPath().resolve("Scrubs.s01e01.mkv"), existing);
+    }
+
+    /**
+     * Test that an existing destination is not overwritten by the copy made
+     * when the clone fails
+     */
+    @Test
+    public void testProgressDestinationExists() throws IOException {
+        try {
+            new ReflinkOperation().setOperands(source, dest).setStallTimeout(1000).start(false);
+            fail("expected FileAlreadyExistsException");
+        } catch(FileAlreadyExistsException e) {
+            
+        }
+        assertArrayEquals(existing, Files.readAllBytes(dest));
+    }
+
+    /**
+     * Test that an existing destination is not overwritten by a native reflink
+     */
+    @Test
+    public void testNativeDestinationExists() throws IOException {
+        try {
+            new ReflinkOperation().setOperands(source, dest).setStallTimeout(1000).start(true);
+            fail("expected FileAlreadyExistsException");
+        } catch(FileAlreadyExistsException e) {
+            
+        }
+        assertArrayEquals(existing, Files.readAllBytes(dest));
+    }
+    
+}
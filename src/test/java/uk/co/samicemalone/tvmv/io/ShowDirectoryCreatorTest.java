@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class ShowDirectoryCreatorTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path tvDir;
+    
+    @Before
+    public void setUp() throws IOException {
+        tvDir = folder.newFolder("TV").toPath();
+        Files.createDirectory(tvDir.resolve("Scrubs"));
+    }
+
+    /**
+     * Test that only the missing show directories are created and that the
+     * created directories are added to the show index
+     */
+    @Test
+    public void testCreateMissing() throws IOException {
+        ShowIndex index = new ShowIndex(Collections.singletonList(tvDir.toString())).build();
+        ShowDirectoryCreator creator = new ShowDirectoryCreator(tvDir, index);
+        creator.create(Arrays.asList("Scrubs", "Friends", "Friends"));
+        creator.throwIfFailed();
+        assertEquals(Collections.singletonList(tvDir.resolve("Friends")), creator.getCreated());
+        assertEquals(2, creator.getExistingCount());
+        assertTrue(Files.isDirectory(tvDir.resolve("Friends")));
+        assertEquals(tvDir.resolve("Friends"), index.getShowDirectory("friends"));
+    }
+
+    /**
+     * Test that an interrupt is propagated rather than reported as success
+     */
+    @Test
+    public void testInterrupted() throws IOException {
+        Thread.currentThread().interrupt();
+        try {
+            new ShowDirectoryCreator(tvDir, null).create(Arrays.asList("Friends", "Lost"));
+            fail("expected InterruptedIOException");
+        } catch(InterruptedIOException e) {
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+    
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class ShowIndexTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path root;
+    private ShowIndex index;
+    
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("TV").toPath();
+        index = new ShowIndex(Collections.singletonList(root.toString()));
+    }
+
+    /**
+     * Test that a show is found case insensitively and that files in the
+     * root are not indexed as shows
+     */
+    @Test
+    public void testOnlyDirectoriesIndexed() throws IOException {
+        Path scrubs = Files.createDirectory(root.resolve("Scrubs"));
+        Files.createFile(root.resolve("Friends"));
+        index.build();
+        assertEquals(scrubs, index.getShowDirectory("scrubs"));
+        assertNull(index.getShowDirectory("Friends"));
+    }
+
+    /**
+     * Test that the shows of a root that can no longer be listed are kept
+     */
+    @Test
+    public void testRefreshUnreadableRootKeepsShows() throws IOException {
+        Path scrubs = Files.createDirectory(root.resolve("Scrubs"));
+        index.build();
+        Files.move(root, root.resolveSibling("TV.moved"));
+        index.refresh(root.toString());
+        assertEquals(scrubs, index.getShowDirectory("Scrubs"));
+    }
+
+    /**
+     * Test that a reload reuses the listing of a root already indexed and
+     * only lists the new roots
+     */
+    @Test
+    public void testReloadListsOnlyNewRoots() throws IOException {
+        Path scrubs = Files.createDirectory(root.resolve("Scrubs"));
+        index.build();
+        Files.createDirectory(root.resolve("Friends"));
+        Path newRoot = folder.newFolder("TV2").toPath();
+        Path lost = Files.createDirectory(newRoot.resolve("Lost"));
+        ShowIndex reloaded = index.reload(Arrays.asList(root.toString(), newRoot.toString()));
+        assertEquals(scrubs, reloaded.getShowDirectory("Scrubs"));
+        assertEquals(lost, reloaded.getShowDirectory("Lost"));
+        assertNull(reloaded.getShowDirectory("Friends"));
+    }
+    
+}
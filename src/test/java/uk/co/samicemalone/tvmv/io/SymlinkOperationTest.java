@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class SymlinkOperationTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final byte[] data = new byte[] { 1, 2, 3, 4 };
+    private Path source;
+    private Path dest;
+    
+    @Before
+    public void setUp() throws IOException {
+        source = Files.write(folder.newFolder("Downloads").toPath().resolve("Scrubs.s01e01.mkv"), data);
+        dest = folder.newFolder("TV").toPath().resolve("Scrubs.s01e01.mkv");
+    }
+
+    /**
+     * Test that the source is left in place and linked to by an absolute
+     * link, even if the source path is relative
+     */
+    @Test
+    public void testSymlink() throws IOException {
+        Path relativeSource = Paths.get("").toAbsolutePath().relativize(source);
+        new SymlinkOperation().setOperands(relativeSource, dest).setStallTimeout(1000).start(false);
+        assertTrue(Files.isSymbolicLink(dest));
+        assertEquals(source, Files.readSymbolicLink(dest));
+        assertArrayEquals(data, Files.readAllBytes(dest));
+        assertTrue(Files.exists(source));
+    }
+
+    /**
+     * Test that rolling back deletes the link but not the source
+     */
+    @Test
+    public void testRollback() throws IOException {
+        IOOperation op = new SymlinkOperation().setOperands(source, dest).setStallTimeout(1000).start(true);
+        op.rollbackOrThrow();
+        assertFalse(Files.exists(dest, LinkOption.NOFOLLOW_LINKS));
+        assertArrayEquals(data, Files.readAllBytes(source));
+    }
+    
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.samicemalone.tvmv.model.WindowsLibrary;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class WindowsLibraryParserTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path libraryFile;
+    private Path cacheFile;
+    
+    @Before
+    public void setUp() throws IOException {
+        libraryFile = folder.getRoot().toPath().resolve("TV.library-ms");
+        cacheFile = folder.getRoot().toPath().resolve("libraries.cache");
+        try (InputStream in = getClass().getResourceAsStream("/TV.library-ms")) {
+            Files.copy(in, libraryFile);
+        }
+        Files.setLastModifiedTime(libraryFile, FileTime.fromMillis(1400000000000L));
+    }
+
+    /**
+     * Test that the locations and default save location are parsed
+     */
+    @Test
+    public void testParse() {
+        WindowsLibrary library = WindowsLibraryParser.parse(libraryFile.toFile());
+        assertEquals(Arrays.asList("D:\\TV", "E:\\Media\\TV"), library.getLocations());
+        assertEquals("E:\\Media\\TV", library.getDefaultSaveLocation());
+    }
+
+    /**
+     * Test that a saved library is used if the .library-ms file has not been
+     * modified
+     */
+    @Test
+    public void testParseCached() throws IOException {
+        WindowsLibraryCache cache = WindowsLibraryCache.load(cacheFile);
+        WindowsLibraryParser.parse(libraryFile, cache);
+        cache.save();
+        Files.write(libraryFile, "not xml".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(libraryFile, FileTime.fromMillis(1400000000000L));
+        WindowsLibrary library = WindowsLibraryParser.parse(libraryFile, WindowsLibraryCache.load(cacheFile));
+        assertEquals(Arrays.asList("D:\\TV", "E:\\Media\\TV"), library.getLocations());
+        assertEquals("E:\\Media\\TV", library.getDefaultSaveLocation());
+    }
+
+    /**
+     * Test that the library is parsed again once the .library-ms file has
+     * been modified
+     */
+    @Test
+    public void testParseModified() throws IOException {
+        WindowsLibraryCache cache = WindowsLibraryCache.load(cacheFile);
+        WindowsLibraryParser.parse(libraryFile, cache);
+        cache.save();
+        String xml = new String(Files.readAllBytes(libraryFile), StandardCharsets.UTF_8);
+        Files.write(libraryFile, xml.replace("D:\\TV", "F:\\TV").getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(libraryFile, FileTime.fromMillis(1500000000000L));
+        WindowsLibrary library = WindowsLibraryParser.parse(libraryFile, WindowsLibraryCache.load(cacheFile));
+        assertEquals(Arrays.asList("F:\\TV", "E:\\Media\\TV"), library.getLocations());
+    }
+
+    /**
+     * Test that a library that failed to parse is not cached
+     */
+    @Test
+    public void testParseFailedNotCached() throws IOException {
+        byte[] xml = Files.readAllBytes(libraryFile);
+        Files.write(libraryFile, "not xml".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(libraryFile, FileTime.fromMillis(1400000000000L));
+        WindowsLibraryCache cache = WindowsLibraryCache.load(cacheFile);
+        assertNull(WindowsLibraryParser.parse(libraryFile, cache));
+        cache.save();
+        Files.write(libraryFile, xml);
+        Files.setLastModifiedTime(libraryFile, FileTime.fromMillis(1400000000000L));
+        WindowsLibrary library = WindowsLibraryParser.parse(libraryFile, WindowsLibraryCache.load(cacheFile));
+        assertEquals(Arrays.asList("D:\\TV", "E:\\Media\\TV"), library.getLocations());
+    }
+
+    /**
+     * Test that the Television library is used when the TV library cannot
+     * be parsed
+     */
+    @Test
+    public void testDetectSkipsUnparsable() throws IOException {
+        Files.copy(libraryFile, libraryFile.resolveSibling("Television.library-ms"));
+        Files.write(libraryFile, "not xml".getBytes(StandardCharsets.UTF_8));
+        WindowsLibraryCache cache = WindowsLibraryCache.load(cacheFile);
+        WindowsLibrary library = WindowsLibraryParser.parse(folder.getRoot().toPath(), "?", cache);
+        assertEquals(Arrays.asList("D:\\TV", "E:\\Media\\TV"), library.getLocations());
+    }
+
+    /**
+     * Test that a missing .library-ms file is not parsed
+     */
+    @Test
+    public void testParseMissing() {
+        WindowsLibraryCache cache = WindowsLibraryCache.load(cacheFile);
+        assertNull(WindowsLibraryParser.parse(libraryFile.resolveSibling("Television.library-ms"), cache));
+    }
+    
+}
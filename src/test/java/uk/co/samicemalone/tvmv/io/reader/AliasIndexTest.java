@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.io.reader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.samicemalone.libtv.model.AliasMap;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class AliasIndexTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Path aliasFile;
+    
+    @Before
+    public void setUp() throws IOException {
+        aliasFile = folder.getRoot().toPath().resolve("aliases.txt");
+        Files.write(aliasFile, Arrays.asList("# comment", "sunny = It's Always Sunny in Philadelphia", "himym=How I Met Your Mother"), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test that reading the aliases file compiles an index that gives the
+     * same aliases in the same order
+     */
+    @Test
+    public void testReadCompilesIndex() throws IOException {
+        RecordingReader r = new RecordingReader();
+        assertFalse(AliasIndex.read(aliasFile, r));
+        r.readIndexed(aliasFile);
+        assertTrue(Files.exists(AliasIndex.getIndexPath(aliasFile)));
+        RecordingReader indexed = new RecordingReader();
+        assertTrue(AliasIndex.read(aliasFile, indexed));
+        assertEquals(r.aliases, indexed.aliases);
+        assertEquals(Arrays.asList("sunny", "It's Always Sunny in Philadelphia", "himym", "How I Met Your Mother"), indexed.aliases);
+    }
+
+    /**
+     * Test that an index is not used once the aliases file has changed, and
+     * that it is rebuilt on the next read
+     */
+    @Test
+    public void testChangedAliasFileRebuildsIndex() throws IOException {
+        new RecordingReader().readIndexed(aliasFile);
+        Files.write(aliasFile, Arrays.asList("office = The Office (US)"), StandardCharsets.UTF_8);
+        assertFalse(AliasIndex.read(aliasFile, new RecordingReader()));
+        RecordingReader r = new RecordingReader();
+        r.readIndexed(aliasFile);
+        assertEquals(Arrays.asList("office", "The Office (US)"), r.aliases);
+        RecordingReader indexed = new RecordingReader();
+        assertTrue(AliasIndex.read(aliasFile, indexed));
+        assertEquals(r.aliases, indexed.aliases);
+    }
+
+    /**
+     * Test that a corrupt index is ignored rather than giving partial aliases
+     */
+    @Test
+    public void testCorruptIndexIgnored() throws IOException {
+        new RecordingReader().readIndexed(aliasFile);
+        Path indexFile = AliasIndex.getIndexPath(aliasFile);
+        byte[] index = Files.readAllBytes(indexFile);
+        Files.write(indexFile, Arrays.copyOf(index, index.length - 4));
+        RecordingReader r = new RecordingReader();
+        assertFalse(AliasIndex.read(aliasFile, r));
+        assertTrue(r.aliases.isEmpty());
+    }
+    
+    private static class RecordingReader extends AliasReader {
+        
+        private final List<String> aliases = new ArrayList<>();
+
+        public RecordingReader() {
+            super(new AliasMap());
+        }
+
+        @Override
+        void onReadAlias(String alias, String show) {
+            aliases.add(alias);
+            aliases.add(show);
+        }
+        
+    }
+    
+}
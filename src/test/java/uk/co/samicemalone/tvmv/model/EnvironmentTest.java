@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.co.samicemalone.tvmv.Args;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class EnvironmentTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Config config;
+    
+    @Before
+    public void setUp() {
+        config = new Config();
+    }
+
+    /**
+     * Test that the destinations probed concurrently are kept in the order
+     * given and that missing destinations are skipped without being degraded
+     */
+    @Test
+    public void testInitialiseDestinations() throws IOException {
+        Path tv = folder.newFolder("TV").toPath();
+        Path tv2 = folder.newFolder("TV2").toPath();
+        config.addDestinationPath(tv2.toString());
+        config.addDestinationPath(tv.resolveSibling("Missing").toString());
+        config.addDestinationPath(tv.toString());
+        Environment env = new Environment(Args.parse(new String[0]), config).initialiseDestinations();
+        assertEquals(Arrays.asList(tv2.toString(), tv.toString()), env.getTvDestinationPaths());
+        assertTrue(env.getDegradedDestinationPaths().isEmpty());
+    }
+
+    /**
+     * Test that the files of each source are listed in order of priority from
+     * highest to lowest, and sources with the same priority keep their order
+     */
+    @Test
+    public void testInitialiseSourcesByPriority() throws IOException {
+        Source downloads = newSource("Downloads", 1, "Scrubs.s01e01.mkv");
+        Source urgent = newSource("Urgent", 5, "Lost.s01e01.mkv");
+        Source torrents = newSource("Torrents", 1, "Friends.s01e01.mkv");
+        config.addDestinationPath(folder.newFolder("TV").toString());
+        Environment env = new Environment(Args.parse(new String[0]), config).initialise();
+        assertEquals(Arrays.asList(urgent, downloads, torrents), new ArrayList<>(env.getSourceFiles().keySet()));
+        assertEquals(Arrays.asList(
+            Paths.get(urgent.getPath(), "Lost.s01e01.mkv").toString(),
+            Paths.get(downloads.getPath(), "Scrubs.s01e01.mkv").toString(),
+            Paths.get(torrents.getPath(), "Friends.s01e01.mkv").toString()
+        ), env.getSourcePaths());
+    }
+    
+    private Source newSource(String name, int priority, String episode) throws IOException {
+        Path dir = folder.newFolder(name).toPath();
+        Files.createFile(dir.resolve(episode));
+        Source source = new Source(dir.toString(), priority, Source.DEFAULT_CONCURRENCY);
+        config.addSource(source);
+        return source;
+    }
+    
+}
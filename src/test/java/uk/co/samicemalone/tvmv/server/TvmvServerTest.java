@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014, Sam Malone. All rights reserved.
+ * 
+ * Redistribution and use of this software in source and binary forms, with or
+ * without modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ *  - Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  - Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *  - Neither the name of Sam Malone nor the names of its contributors may be
+ *    used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package uk.co.samicemalone.tvmv.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sam Malone
+ */
+public class TvmvServerTest {
+    
+    private static final String TOKEN = "0123456789abcdef";
+    
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket accepted;
+    
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        accepted = serverSocket.accept();
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        accepted.close();
+        serverSocket.close();
+    }
+    
+    private void sendRequest(String token, String... args) throws IOException {
+        DataOutputStream out = new DataOutputStream(client.getOutputStream());
+        out.writeUTF(token);
+        out.writeUTF("/downloads");
+        out.writeBoolean(true);
+        out.writeInt(args.length);
+        for(String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+    }
+
+    /**
+     * Test that a request with the right token is read in full
+     */
+    @Test
+    public void testReadRequest() throws IOException {
+        sendRequest(TOKEN, "Scrubs.s01e01.mkv", "-c");
+        TvmvServer.Request request = TvmvServer.readRequest(accepted, TOKEN);
+        assertArrayEquals(new String[] { "Scrubs.s01e01.mkv", "-c" }, request.getArgs());
+        assertEquals(Paths.get("/downloads"), request.getWorkingDirectory());
+        assertFalse(accepted.isClosed());
+    }
+
+    /**
+     * Test that a request with the wrong token is rejected, so the client
+     * imports without the server instead of failing
+     */
+    @Test
+    public void testWrongTokenRejected() throws IOException {
+        sendRequest("fedcba9876543210", "Scrubs.s01e01.mkv");
+        assertNull(TvmvServer.readRequest(accepted, TOKEN));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+        assertEquals(TvmvClient.NOT_SUBMITTED, TvmvClient.receive(in, System.out));
+    }
+
+    /**
+     * Test that a server closing the connection is reported with a clear
+     * error rather than an end of file
+     */
+    @Test
+    public void testClosedConnection() {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(new byte[] { TvmvServer.FRAME_OUTPUT, 0, 0, 0, 0 }));
+        try {
+            TvmvClient.receive(in, System.out);
+            fail("expected an IOException");
+        } catch(EOFException e) {
+            fail("expected a clear error instead of EOFException");
+        } catch(IOException e) {
+            assertEquals("The tvmv server closed the connection before the import finished", e.getMessage());
+        }
+    }
+    
+}